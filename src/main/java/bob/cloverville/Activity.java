@@ -19,6 +19,9 @@ public class Activity {
   private LocalDate deadline;
   private LocalDate completedAt;
 
+  // Bumped by ActivityService on every saved change; not persisted.
+  private transient long version;
+
   private static final int TITLE_MAX = 50;
   private static final int DESCRIPTION_MAX = 300;
 
@@ -46,6 +49,32 @@ public class Activity {
     this.completedAt = null;
   }
 
+  // Rebuilds a stored activity as-is, without validation or a new id.
+  Activity(UUID id, ActivityType type, String title, String description, int pointValue,
+      UUID performerID, UUID receiverID,
+      LocalDate createdAt, LocalDate deadline, LocalDate completedAt) {
+    this.id = id;
+    this.type = type;
+    this.title = title;
+    this.description = description;
+    this.pointValue = pointValue;
+    this.performerID = performerID;
+    this.receiverID = receiverID;
+    this.createdAt = createdAt;
+    this.deadline = deadline;
+    this.completedAt = completedAt;
+  }
+
+  // Detached copy for editing; pass it back to updateActivity to save. Take it
+  // with ActivityService.copyOf, which holds the lock, so the fields and the
+  // version come from the same saved state.
+  Activity copy() {
+    Activity copy = new Activity(id, type, title, description, pointValue,
+        performerID, receiverID, createdAt, deadline, completedAt);
+    copy.version = version;
+    return copy;
+  }
+
   // -------- Getters --------
   public UUID getId() { return id; }
   public ActivityType getType() { return type; }
@@ -57,6 +86,7 @@ public class Activity {
   public LocalDate getCreatedAt() { return createdAt; }
   public LocalDate getDeadline() { return deadline; }
   public LocalDate getCompletedAt() { return completedAt; }
+  public long getVersion() { return version; }
 
   // -------- Setters --------
   public void setTitle(String title) { this.title = validateTitle(title); }
@@ -67,6 +97,7 @@ public class Activity {
   public void setDeadline(LocalDate deadline) { this.deadline = validateDeadline(type, deadline, createdAt); }
   public void setCompletedAt(LocalDate completedAt) { this.completedAt = completedAt; }
   public void setCreatedAt(LocalDate createdAt) { this.createdAt = createdAt; }
+  void nextVersion() { version++; }
 
   // -------- Validation --------
   private String validateTitle(String title) {
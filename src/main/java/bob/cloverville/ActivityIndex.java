@@ -0,0 +1,188 @@
+package bob.cloverville;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Secondary indexes over the activities held by ActivityService: by type and
+// completion state, by participant, and by deadline. Activities are mutable
+// and edited in place, so the keys each one was indexed under are remembered
+// and used to find its old entries when it changes.
+public class ActivityIndex {
+
+  private final Map<ActivityType, Map<UUID, Activity>> openByType = new EnumMap<>(ActivityType.class);
+  private final Map<ActivityType, Map<UUID, Activity>> completedByType = new EnumMap<>(ActivityType.class);
+  private final Map<UUID, Map<UUID, Activity>> byParticipant = new HashMap<>();
+  private final NavigableMap<LocalDate, Map<UUID, Activity>> byDeadline = new TreeMap<>();
+
+  private final Map<UUID, Keys> indexed = new HashMap<>();
+  private int deadlineCount;
+
+  private record Keys(ActivityType type, UUID performer, UUID receiver, LocalDate deadline, boolean completed) {
+    static Keys of(Activity a) {
+      return new Keys(a.getType(), a.getPerformerID(), a.getReceiverID(), a.getDeadline(), a.getCompletedAt() != null);
+    }
+  }
+
+  public ActivityIndex() {
+    for (ActivityType type : ActivityType.values()) {
+      openByType.put(type, new LinkedHashMap<>());
+      completedByType.put(type, new LinkedHashMap<>());
+    }
+  }
+
+  // ========================================================================
+  // MAINTENANCE
+  // ========================================================================
+  public void add(Activity a) {
+    Keys keys = Keys.of(a);
+    indexed.put(a.getId(), keys);
+    insert(a, keys);
+  }
+
+  public void remove(Activity a) {
+    Keys keys = indexed.remove(a.getId());
+    if (keys != null) delete(a.getId(), keys);
+  }
+
+  // Re-files an activity after it was edited. Entries whose key did not
+  // change are left alone so their position in each index is kept.
+  public void update(Activity a) {
+    Keys old = indexed.get(a.getId());
+    if (old == null) {
+      add(a);
+      return;
+    }
+
+    Keys now = Keys.of(a);
+    if (now.equals(old)) return;
+    indexed.put(a.getId(), now);
+
+    if (old.completed() != now.completed() || old.type() != now.type()) {
+      stateMap(old).remove(a.getId());
+      stateMap(now).put(a.getId(), a);
+    }
+    if (!Objects.equals(old.performer(), now.performer()) || !Objects.equals(old.receiver(), now.receiver())) {
+      // Both together: one member may be performer and receiver at once.
+      removeFrom(byParticipant, old.performer(), a.getId());
+      removeFrom(byParticipant, old.receiver(), a.getId());
+      addTo(byParticipant, now.performer(), a);
+      addTo(byParticipant, now.receiver(), a);
+    }
+    if (!Objects.equals(old.deadline(), now.deadline())) {
+      removeFrom(byDeadline, old.deadline(), a.getId());
+      addTo(byDeadline, now.deadline(), a);
+      if (old.deadline() == null) deadlineCount++;
+      if (now.deadline() == null) deadlineCount--;
+    }
+  }
+
+  private void insert(Activity a, Keys keys) {
+    stateMap(keys).put(a.getId(), a);
+    addTo(byParticipant, keys.performer(), a);
+    addTo(byParticipant, keys.receiver(), a);
+    addTo(byDeadline, keys.deadline(), a);
+    if (keys.deadline() != null) deadlineCount++;
+  }
+
+  private void delete(UUID id, Keys keys) {
+    stateMap(keys).remove(id);
+    removeFrom(byParticipant, keys.performer(), id);
+    removeFrom(byParticipant, keys.receiver(), id);
+    removeFrom(byDeadline, keys.deadline(), id);
+    if (keys.deadline() != null) deadlineCount--;
+  }
+
+  private Map<UUID, Activity> stateMap(Keys keys) {
+    return (keys.completed() ? completedByType : openByType).get(keys.type());
+  }
+
+  private static <K> void addTo(Map<K, Map<UUID, Activity>> index, K key, Activity a) {
+    if (key == null) return;
+    index.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(a.getId(), a);
+  }
+
+  private static <K> void removeFrom(Map<K, Map<UUID, Activity>> index, K key, UUID id) {
+    if (key == null) return;
+    Map<UUID, Activity> bucket = index.get(key);
+    if (bucket == null) return;
+    bucket.remove(id);
+    if (bucket.isEmpty()) index.remove(key);
+  }
+
+  // ========================================================================
+  // QUERIES
+  // ========================================================================
+  public List<Activity> byType(ActivityType type) {
+    return streamType(type, null).toList();
+  }
+
+  public List<Activity> open(ActivityType type) {
+    return streamType(type, false).toList();
+  }
+
+  public List<Activity> open() {
+    return streamTypes(EnumSet.allOf(ActivityType.class), false).toList();
+  }
+
+  public List<Activity> completed() {
+    return streamTypes(EnumSet.allOf(ActivityType.class), true).toList();
+  }
+
+  public List<Activity> forParticipant(UUID memberId) {
+    return streamParticipant(memberId).toList();
+  }
+
+  // Activities with a deadline in [from, to], earliest first. Null bounds are open.
+  public List<Activity> deadlineBetween(LocalDate from, LocalDate to) {
+    return streamDeadline(from, to).toList();
+  }
+
+  // ========================================================================
+  // STREAMS (for the query planner)
+  // ========================================================================
+  // completed: true/false for one state, null for both.
+  Stream<Activity> streamTypes(Set<ActivityType> types, Boolean completed) {
+    return types.stream().flatMap(type -> streamType(type, completed));
+  }
+
+  Stream<Activity> streamType(ActivityType type, Boolean completed) {
+    if (completed == null)
+      return Stream.concat(openByType.get(type).values().stream(), completedByType.get(type).values().stream());
+    return (completed ? completedByType : openByType).get(type).values().stream();
+  }
+
+  Stream<Activity> streamParticipant(UUID memberId) {
+    Map<UUID, Activity> bucket = byParticipant.get(memberId);
+    return bucket != null ? bucket.values().stream() : Stream.empty();
+  }
+
+  Stream<Activity> streamDeadline(LocalDate from, LocalDate to) {
+    NavigableMap<LocalDate, Map<UUID, Activity>> range = byDeadline;
+    if (from != null && to != null) range = byDeadline.subMap(from, true, to, true);
+    else if (from != null) range = byDeadline.tailMap(from, true);
+    else if (to != null) range = byDeadline.headMap(to, true);
+
+    return range.values().stream().flatMap(bucket -> bucket.values().stream());
+  }
+
+  // -------- Sizes, used to pick the narrowest starting point --------
+  int countTypes(Set<ActivityType> types, Boolean completed) {
+    int count = 0;
+    for (ActivityType type : types) {
+      if (completed == null || !completed) count += openByType.get(type).size();
+      if (completed == null || completed) count += completedByType.get(type).size();
+    }
+    return count;
+  }
+
+  int countParticipant(UUID memberId) {
+    Map<UUID, Activity> bucket = byParticipant.get(memberId);
+    return bucket != null ? bucket.size() : 0;
+  }
+
+  // Upper bound: number of activities that have any deadline.
+  int countWithDeadline() {
+    return deadlineCount;
+  }
+}
@@ -0,0 +1,13 @@
+package bob.cloverville;
+
+// Told about every change ActivityService makes to its activities. Called on
+// the writing thread with the service's lock held, so calls arrive in the
+// order the changes were made; must not call back into the service.
+public interface ActivityListener {
+
+  // Added, or changed in place.
+  void saved(Activity a);
+
+  // Deleted, expired, or a trade completed and taken off the board.
+  void removed(Activity a);
+}
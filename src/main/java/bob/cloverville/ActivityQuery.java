@@ -0,0 +1,121 @@
+package bob.cloverville;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Describes which activities to fetch. Conditions are combined with AND and
+// run by ActivityService.query, which picks the narrowest index to start from
+// and applies the remaining conditions while streaming.
+//
+//   ActivityQuery.all().ofType(ActivityType.COMMUNAL).completed(false).limit(20)
+public class ActivityQuery {
+
+  private Set<ActivityType> types;     // null = any type
+  private Boolean completed;           // null = either
+  private boolean requireDeadline;
+  private LocalDate deadlineFrom;
+  private LocalDate deadlineTo;
+  private UUID participant;
+  private String text;
+  private List<String> words;          // text split as ActivityTextIndex does
+  private Comparator<Activity> order;
+  private int limit = -1;
+
+  private ActivityQuery() {}
+
+  public static ActivityQuery all() {
+    return new ActivityQuery();
+  }
+
+  // -------- Conditions --------
+  public ActivityQuery ofType(ActivityType first, ActivityType... more) {
+    if (first == null) throw new IllegalArgumentException("Activity type cannot be null.");
+    types = EnumSet.of(first, more);
+    return this;
+  }
+
+  public ActivityQuery completed(boolean completed) {
+    this.completed = completed;
+    return this;
+  }
+
+  public ActivityQuery withDeadline() {
+    requireDeadline = true;
+    return this;
+  }
+
+  // Deadline within [from, to]; either bound may be null. Implies withDeadline().
+  public ActivityQuery deadlineBetween(LocalDate from, LocalDate to) {
+    if (from != null && to != null && from.isAfter(to))
+      throw new IllegalArgumentException("Start date must not be after end date.");
+    requireDeadline = true;
+    deadlineFrom = from;
+    deadlineTo = to;
+    return this;
+  }
+
+  // Member is the performer or the receiver.
+  public ActivityQuery involving(UUID memberId) {
+    if (memberId == null) throw new IllegalArgumentException("Member ID cannot be null.");
+    participant = memberId;
+    return this;
+  }
+
+  // Every word of the text starts a word of the title or description,
+  // ignoring case. Text without any words matches everything.
+  public ActivityQuery matching(String text) {
+    List<String> words = ActivityTextIndex.tokenize(text);
+    this.text = words.isEmpty() ? null : text;
+    this.words = words.isEmpty() ? null : words;
+    return this;
+  }
+
+  // -------- Shape of the result --------
+  public ActivityQuery sortedBy(Comparator<Activity> order) {
+    this.order = order;
+    return this;
+  }
+
+  public ActivityQuery limit(int limit) {
+    if (limit < 0) throw new IllegalArgumentException("Limit cannot be negative.");
+    this.limit = limit;
+    return this;
+  }
+
+  // -------- Evaluation --------
+  public boolean matches(Activity a) {
+    return matchesIgnoringText(a) && (words == null || ActivityTextIndex.matches(a, words));
+  }
+
+  // All conditions except matching(); the planner checks text through the index.
+  boolean matchesIgnoringText(Activity a) {
+    if (types != null && !types.contains(a.getType())) return false;
+    if (completed != null && completed != (a.getCompletedAt() != null)) return false;
+
+    LocalDate deadline = a.getDeadline();
+    if (requireDeadline && deadline == null) return false;
+    if (deadlineFrom != null && deadline.isBefore(deadlineFrom)) return false;
+    if (deadlineTo != null && deadline.isAfter(deadlineTo)) return false;
+
+    if (participant != null
+        && !participant.equals(a.getPerformerID())
+        && !participant.equals(a.getReceiverID())) return false;
+
+    return true;
+  }
+
+  // -------- Read by the planner --------
+  Set<ActivityType> getTypes() { return types; }
+  Boolean getCompleted() { return completed; }
+  boolean requiresDeadline() { return requireDeadline; }
+  LocalDate getDeadlineFrom() { return deadlineFrom; }
+  LocalDate getDeadlineTo() { return deadlineTo; }
+  UUID getParticipant() { return participant; }
+  String getText() { return text; }
+  Comparator<Activity> getOrder() { return order; }
+  int getLimit() { return limit; }
+}
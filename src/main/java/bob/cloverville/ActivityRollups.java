@@ -0,0 +1,336 @@
+package bob.cloverville;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Greens logged, community points and completed tasks per day, week (Monday
+// to Sunday) and month, kept pre-aggregated so a chart's series is read
+// straight out of an array: O(1) per bucket, whatever the range.
+//
+// Each resolution is a ring of fixed slots: an int[] with METRICS values per
+// slot and a long[] naming the bucket each slot holds. A slot is reused once
+// its bucket falls out of the window, which covers a little over two years of
+// days and weeks and four years of months.
+//
+// Fed from the HistoryWriter. Changed slots are written in place to
+// rollups.bin by the WriteBehindQueue, each with a checksum and the time of
+// the newest event it counts; the header records the newest event on disk.
+// On startup the history after that point is replayed, and events a slot
+// already counts are skipped, so nothing is lost or counted twice.
+public final class ActivityRollups implements Consumer<HistoryEvent> {
+
+  public enum Metric { GREENS, COMMUNITY_POINTS, COMPLETED_TASKS }
+
+  public enum Resolution {
+    DAY(800), WEEK(120), MONTH(48);
+
+    private final int slots;
+
+    Resolution(int slots) {
+      this.slots = slots;
+    }
+
+    public long bucketOf(LocalDate day) {
+      return switch (this) {
+        case DAY -> day.toEpochDay();
+        case WEEK -> Math.floorDiv(day.toEpochDay() + 3, 7);  // 1970-01-01 was a Thursday
+        case MONTH -> day.getYear() * 12L + day.getMonthValue() - 1;
+      };
+    }
+
+    public LocalDate startOf(long bucket) {
+      return switch (this) {
+        case DAY -> LocalDate.ofEpochDay(bucket);
+        case WEEK -> LocalDate.ofEpochDay(bucket * 7 - 3);
+        case MONTH -> LocalDate.of((int) Math.floorDiv(bucket, 12), Math.floorMod(bucket, 12) + 1, 1);
+      };
+    }
+  }
+
+  // values[i] is the bucket starting at start(i).
+  public record Series(Metric metric, Resolution resolution, long firstBucket, int[] values) {
+    public LocalDate start(int i) {
+      return resolution.startOf(firstBucket + i);
+    }
+  }
+
+  private static final int METRICS = Metric.values().length;
+  private static final long EMPTY = Long.MIN_VALUE;
+  private static final ZoneId ZONE = ZoneId.systemDefault();
+
+  // File layout: header, then every slot of each resolution in order.
+  private static final int MAGIC = 0x434C5255;  // "CLRU"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 32;   // magic, version, watermark, crc
+  private static final int SLOT_BYTES = 32;     // bucket, lastAt, values, crc
+
+  private static final class Ring {
+    final Resolution resolution;
+    final long[] buckets;
+    final long[] lastAt;  // newest event counted, epoch nanos
+    final int[] values;
+    final BitSet dirty = new BitSet();
+
+    Ring(Resolution resolution) {
+      this.resolution = resolution;
+      this.buckets = new long[resolution.slots];
+      this.lastAt = new long[resolution.slots];
+      this.values = new int[resolution.slots * METRICS];
+      Arrays.fill(buckets, EMPTY);
+      Arrays.fill(lastAt, EMPTY);
+    }
+
+    int get(long bucket, Metric metric) {
+      int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+      return buckets[slot] == bucket ? values[slot * METRICS + metric.ordinal()] : 0;
+    }
+
+    // Slot for the bucket, cleared if it held an older one; -1 if the bucket
+    // is older than the window.
+    int claim(long bucket) {
+      int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+      if (buckets[slot] == bucket) return slot;
+      if (buckets[slot] != EMPTY && buckets[slot] > bucket) return -1;
+
+      buckets[slot] = bucket;
+      lastAt[slot] = EMPTY;
+      Arrays.fill(values, slot * METRICS, (slot + 1) * METRICS, 0);
+      return slot;
+    }
+  }
+
+  private final Path file;
+  private final WriteBehindQueue writeQueue;
+  private final Ring[] rings = new Ring[Resolution.values().length];
+
+  // Guarded by "this".
+  private long watermark = EMPTY;  // newest event counted, epoch nanos
+  private long loadedUpTo = EMPTY; // newest event already in the file at startup
+  private Instant replayFrom;
+  private boolean scheduled;
+
+  // Serialises flushes.
+  private final Object fileLock = new Object();
+
+  public ActivityRollups(Path dir, WriteBehindQueue writeQueue) {
+    this.file = dir.resolve("rollups.bin");
+    this.writeQueue = writeQueue;
+    for (Resolution r : Resolution.values()) rings[r.ordinal()] = new Ring(r);
+
+    try {
+      Files.createDirectories(dir);
+      load();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to open rollups in " + dir, e);
+    }
+    writeQueue.attach(this::flush);
+  }
+
+  // Catches up from the history and then follows it. The future completes
+  // once the missed events are counted.
+  public CompletableFuture<Void> attach(HistoryWriter history) {
+    return history.subscribe(this, replayFrom);
+  }
+
+  // ========================================================================
+  // COUNTING (history thread)
+  // ========================================================================
+  @Override
+  public synchronized void accept(HistoryEvent event) {
+    if (event.kind() != HistoryEvent.Kind.COMPLETED) return;
+
+    LocalDate day = event.at().atZone(ZONE).toLocalDate();
+    long at = nanos(event.at());
+    for (Ring ring : rings) {
+      int slot = ring.claim(ring.resolution.bucketOf(day));
+      if (slot < 0) continue;
+      if (at <= loadedUpTo && at <= ring.lastAt[slot]) continue;  // replayed, already in the file
+
+      int base = slot * METRICS;
+      if (event.type() == ActivityType.GREEN) {
+        ring.values[base + Metric.GREENS.ordinal()]++;
+        ring.values[base + Metric.COMMUNITY_POINTS.ordinal()] += event.points();
+      } else {
+        ring.values[base + Metric.COMPLETED_TASKS.ordinal()]++;
+      }
+      ring.lastAt[slot] = at;
+      ring.dirty.set(slot);
+    }
+    watermark = Math.max(watermark, at);
+
+    if (!scheduled) {
+      scheduled = true;
+      writeQueue.schedule(this::flush);
+    }
+  }
+
+  private static long nanos(Instant at) {
+    return at.getEpochSecond() * 1_000_000_000L + at.getNano();
+  }
+
+  private static Instant instant(long nanos) {
+    return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+  }
+
+  // ========================================================================
+  // QUERIES
+  // ========================================================================
+  // One value per bucket from the one holding from to the one holding to.
+  // Buckets outside the window read as 0.
+  public synchronized Series series(Metric metric, Resolution resolution, LocalDate from, LocalDate to) {
+    long first = resolution.bucketOf(from);
+    long last = resolution.bucketOf(to);
+    if (last < first) throw new IllegalArgumentException("Start date must not be after end date.");
+    if (last - first >= resolution.slots)
+      throw new IllegalArgumentException("Range is longer than the " + resolution.slots + " " + resolution + " buckets kept.");
+
+    Ring ring = rings[resolution.ordinal()];
+    int[] values = new int[(int) (last - first + 1)];
+    for (int i = 0; i < values.length; i++) values[i] = ring.get(first + i, metric);
+    return new Series(metric, resolution, first, values);
+  }
+
+  // The last count buckets up to and including the one holding today.
+  public Series latest(Metric metric, Resolution resolution, int count) {
+    if (count < 1) throw new IllegalArgumentException("Count must be positive.");
+    LocalDate today = LocalDate.now();
+    LocalDate from = resolution.startOf(resolution.bucketOf(today) - count + 1);
+    return series(metric, resolution, from, today);
+  }
+
+  // ========================================================================
+  // WRITING (writer thread)
+  // ========================================================================
+  private record SlotWrite(Ring ring, int slot, long position, ByteBuffer bytes) {}
+
+  public void flush() {
+    synchronized (fileLock) {
+      List<SlotWrite> writes = new ArrayList<>();
+      ByteBuffer header;
+      synchronized (this) {
+        scheduled = false;
+        long position = HEADER_BYTES;
+        for (Ring ring : rings) {
+          for (int slot = ring.dirty.nextSetBit(0); slot >= 0; slot = ring.dirty.nextSetBit(slot + 1)) {
+            writes.add(new SlotWrite(ring, slot, position + (long) slot * SLOT_BYTES, encodeSlot(ring, slot)));
+          }
+          ring.dirty.clear();
+          position += (long) ring.buckets.length * SLOT_BYTES;
+        }
+        if (writes.isEmpty()) return;
+        header = encodeHeader(watermark);
+      }
+
+      try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        for (SlotWrite w : writes) writeAt(ch, w.bytes(), w.position());
+        ch.force(false);
+        // Only once every slot it covers is on disk.
+        writeAt(ch, header, 0);
+        ch.force(false);
+      } catch (IOException e) {
+        e.printStackTrace();
+        synchronized (this) {
+          for (SlotWrite w : writes) w.ring().dirty.set(w.slot());  // retry next flush
+        }
+      }
+    }
+  }
+
+  private static void writeAt(FileChannel ch, ByteBuffer bytes, long position) throws IOException {
+    while (bytes.hasRemaining()) position += ch.write(bytes, position);
+  }
+
+  private static ByteBuffer encodeSlot(Ring ring, int slot) {
+    ByteBuffer buf = ByteBuffer.allocate(SLOT_BYTES);
+    buf.putLong(ring.buckets[slot]).putLong(ring.lastAt[slot]);
+    for (int m = 0; m < METRICS; m++) buf.putInt(ring.values[slot * METRICS + m]);
+    buf.putInt(crc(buf.array(), SLOT_BYTES - 4));
+    return buf.flip();
+  }
+
+  private static ByteBuffer encodeHeader(long watermark) {
+    ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES);
+    buf.putInt(MAGIC).putInt(VERSION).putLong(watermark);
+    buf.putInt(crc(buf.array(), 16));
+    return buf.position(HEADER_BYTES).flip();
+  }
+
+  private static int crc(byte[] bytes, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, length);
+    return (int) crc.getValue();
+  }
+
+  // ========================================================================
+  // LOADING
+  // ========================================================================
+  private static long fileSize() {
+    long size = HEADER_BYTES;
+    for (Resolution r : Resolution.values()) size += (long) r.slots * SLOT_BYTES;
+    return size;
+  }
+
+  // Sets replayFrom: just after the header's watermark, or earlier if a slot
+  // was damaged and its bucket has to be counted again. Without a usable
+  // file, the whole window is rebuilt from the history.
+  private void load() throws IOException {
+    byte[] content = Files.exists(file) ? Files.readAllBytes(file) : null;
+    ByteBuffer buf = content != null ? ByteBuffer.wrap(content) : null;
+
+    if (buf == null || content.length != fileSize() || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION
+        || buf.getInt(16) != crc(content, 16)) {
+      Resolution widest = Resolution.MONTH;
+      replayFrom = widest.startOf(widest.bucketOf(LocalDate.now()) - widest.slots + 1)
+          .atStartOfDay(ZONE).toInstant().minusNanos(1);
+      for (Ring ring : rings) ring.dirty.set(0, ring.buckets.length);  // overwrite whatever is there
+      return;
+    }
+
+    watermark = buf.getLong(8);
+    loadedUpTo = watermark;
+    long from = watermark;
+    LocalDate watermarkDay = instant(watermark).atZone(ZONE).toLocalDate();
+
+    int position = HEADER_BYTES;
+    for (Ring ring : rings) {
+      for (int slot = 0; slot < ring.buckets.length; slot++, position += SLOT_BYTES) {
+        buf.position(position);
+        long bucket = buf.getLong();
+        long lastAt = buf.getLong();
+        int[] values = new int[METRICS];
+        for (int m = 0; m < METRICS; m++) values[m] = buf.getInt();
+        int expected = buf.getInt();
+
+        CRC32 crc = new CRC32();
+        crc.update(content, position, SLOT_BYTES - 4);
+        if ((int) crc.getValue() != expected) {
+          // Count the bucket this slot would hold again from its start.
+          long newest = ring.resolution.bucketOf(watermarkDay);
+          long lost = newest - Math.floorMod(newest - slot, (long) ring.buckets.length);
+          from = Math.min(from, nanos(ring.resolution.startOf(lost).atStartOfDay(ZONE).toInstant()) - 1);
+          ring.dirty.set(slot);
+          continue;
+        }
+        ring.buckets[slot] = bucket;
+        ring.lastAt[slot] = lastAt;
+        System.arraycopy(values, 0, ring.values, slot * METRICS, METRICS);
+      }
+    }
+    replayFrom = instant(from);
+  }
+}
@@ -0,0 +1,97 @@
+package bob.cloverville;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Runs the date-driven jobs while the app is open: expiring greens and
+// trades, the weekly communal rollover and the six-monthly point reset.
+// Everything here is due on a date, so the timer wakes once at startup and
+// then at each midnight; what is due is taken from ActivityService's expiry
+// queue rather than found by scanning.
+//
+// The jobs are submitted to the command processor like any other mutation,
+// so their saves never block the UI; only the onChange callback goes through
+// the dispatch executor (the FX thread in the app).
+public class ActivityScheduler {
+
+  private final ActivityService activityService;
+  private final MemberService memberService;
+  private final SettingsService settingsService;
+  private final CommandProcessor commands;
+  private final Executor dispatch;
+  private final Runnable onChange;
+
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "cloverville-scheduler");
+    t.setDaemon(true);
+    return t;
+  });
+
+  // onChange runs on the dispatch executor after a job changed any data.
+  public ActivityScheduler(
+      ActivityService activityService,
+      MemberService memberService,
+      SettingsService settingsService,
+      CommandProcessor commands,
+      Executor dispatch,
+      Runnable onChange) {
+
+    this.activityService = activityService;
+    this.memberService = memberService;
+    this.settingsService = settingsService;
+    this.commands = commands;
+    this.dispatch = dispatch;
+    this.onChange = onChange;
+  }
+
+  // Catches up on anything that fell due while the app was closed, then arms
+  // the timer.
+  public void start() {
+    timer.execute(this::runAndNotify);
+    armForMidnight();
+  }
+
+  public void shutdown() {
+    timer.shutdownNow();
+  }
+
+  // Returns true if anything changed.
+  public boolean runDue() {
+    boolean changed = activityService.expireDue(LocalDate.now()) > 0;
+
+    if (settingsService.isWeeklyResetDue()) {
+      activityService.rolloverCommunal();
+      changed = true;
+    }
+
+    if (settingsService.isMonthlyPointResetDue()) {
+      memberService.resetAllPoints();
+      settingsService.updatePointResetDate();
+      changed = true;
+    }
+    return changed;
+  }
+
+  private void armForMidnight() {
+    ZonedDateTime now = ZonedDateTime.now();
+    ZonedDateTime midnight = now.toLocalDate().plusDays(1).atStartOfDay(now.getZone());
+    long delay = Duration.between(now, midnight).toMillis();
+
+    timer.schedule(() -> {
+      runAndNotify();
+      armForMidnight();
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private void runAndNotify() {
+    commands.submit(this::runDue).whenComplete((changed, error) -> {
+      if (error != null) error.printStackTrace();
+      else if (changed && onChange != null) dispatch.execute(onChange);
+    });
+  }
+}
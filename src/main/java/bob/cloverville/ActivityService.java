@@ -1,30 +1,125 @@
 package bob.cloverville;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.time.LocalDate;
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Thread-safe. Writers take the write lock; index queries take the read lock.
+// getById reads a concurrent map, and getAll, the per-type getters and
+// getPage read the published snapshot; none of them takes a lock.
+//
+// Lock order: this service's lock, then MemberService's lock,
+// then SettingsService. Nothing called from here calls back into this class.
 public class ActivityService {
 
   private final JsonStorage<Activity> greenStorage;
   private final JsonStorage<Activity> tradeStorage;
   private final JsonStorage<Activity> communalStorage;
 
-  private final List<Activity> greens;
-  private final List<Activity> trades;
-  private final List<Activity> communal;
+  // Per-type stores in insertion order, keyed by insertion sequence. The
+  // three are published together as one immutable version: readers take the
+  // current one without locking or copying, writers replace it.
+  private record Stores(
+      PersistentSortedMap<Long, Activity> greens,
+      PersistentSortedMap<Long, Activity> trades,
+      PersistentSortedMap<Long, Activity> communal) {
+
+    PersistentSortedMap<Long, Activity> of(ActivityType type) {
+      return switch (type) {
+        case GREEN -> greens;
+        case TRADE_TASK, TRADE_GOODS -> trades;
+        case COMMUNAL -> communal;
+      };
+    }
+
+    Stores with(ActivityType type, PersistentSortedMap<Long, Activity> store) {
+      return switch (type) {
+        case GREEN -> new Stores(store, trades, communal);
+        case TRADE_TASK, TRADE_GOODS -> new Stores(greens, store, communal);
+        case COMMUNAL -> new Stores(greens, trades, store);
+      };
+    }
+
+    // Greens, then trades, then communal.
+    List<Activity> all() {
+      List<Activity> g = greens.values();
+      List<Activity> t = trades.values();
+      List<Activity> c = communal.values();
+      return new AbstractList<>() {
+        @Override
+        public int size() {
+          return g.size() + t.size() + c.size();
+        }
+
+        @Override
+        public Activity get(int i) {
+          if (i < g.size()) return g.get(i);
+          i -= g.size();
+          return i < t.size() ? t.get(i) : c.get(i - t.size());
+        }
+
+        @Override
+        public Iterator<Activity> iterator() {
+          return Stream.of(g, t, c).flatMap(List::stream).iterator();
+        }
+      };
+    }
+  }
+
+  private volatile Stores stores;
+
+  // Guards seqById, the indexes and the expiry queue, and serializes writers.
+  private final StampedLock lock = new StampedLock();
+
+  // Each activity's key in its store.
+  private final Map<UUID, Long> seqById = new HashMap<>();
+  private long nextSeq;
+
+  // Primary index over all three stores. Concurrent so getById can read it
+  // without the lock; writers still change it under the write lock.
+  private final Map<UUID, Activity> byId = new ConcurrentHashMap<>();
+
+  // Secondary indexes for filtered queries.
+  private final ActivityIndex index = new ActivityIndex();
+  private final ActivityTextIndex textIndex = new ActivityTextIndex();
+
+  // When each green or open trade expires, for the scheduler.
+  private final ExpiryQueue expiries = new ExpiryQueue();
 
   private final MemberService memberService;
   private final SettingsService settingsService;
+  private final HistoryWriter history;
+
+  private final List<ActivityListener> listeners = new CopyOnWriteArrayList<>();
+
+  public ActivityService(
+      JsonStorage<Activity> greenStorage,
+      JsonStorage<Activity> tradeStorage,
+      JsonStorage<Activity> communalStorage,
+      MemberService memberService,
+      SettingsService settingsService,
+      HistoryWriter history) {
+
+    this(greenStorage, tradeStorage, communalStorage,
+        greenStorage.load(), tradeStorage.load(), communalStorage.load(),
+        memberService, settingsService, history);
+  }
 
+  // For callers that already loaded the stores, e.g. in parallel at startup.
   public ActivityService(
       JsonStorage<Activity> greenStorage,
       JsonStorage<Activity> tradeStorage,
       JsonStorage<Activity> communalStorage,
+      List<Activity> loadedGreens,
+      List<Activity> loadedTrades,
+      List<Activity> loadedCommunal,
       MemberService memberService,
-      SettingsService settingsService) {
+      SettingsService settingsService,
+      HistoryWriter history) {
 
     this.greenStorage = greenStorage;
     this.tradeStorage = tradeStorage;
@@ -32,100 +127,341 @@ public class ActivityService {
 
     this.memberService = memberService;
     this.settingsService = settingsService;
+    this.history = history;
 
-    this.greens = new ArrayList<>(greenStorage.load());
-    this.trades = new ArrayList<>(tradeStorage.load());
-    this.communal = new ArrayList<>(communalStorage.load());
+    this.stores = new Stores(toStore(loadedGreens), toStore(loadedTrades), toStore(loadedCommunal));
+  }
+
+  private PersistentSortedMap<Long, Activity> toStore(List<Activity> loaded) {
+    List<Long> keys = new ArrayList<>(loaded.size());
+    List<Activity> values = new ArrayList<>(loaded.size());
+    for (Activity a : loaded) {
+      if (byId.putIfAbsent(a.getId(), a) != null) continue;  // first copy wins
+      long seq = nextSeq++;
+      seqById.put(a.getId(), seq);
+      keys.add(seq);
+      values.add(a);
+      index.add(a);
+      textIndex.add(a);
+      expiries.schedule(a.getId(), expiryDate(a));
+    }
+    return PersistentSortedMap.fromSorted(keys, values);
   }
 
   // ========================================================================
   // ADD ACTIVITY
   // ========================================================================
   public void addActivity(Activity a) {
+    long stamp = lock.writeLock();
+    try {
+      add(a);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
 
-    if (a == null) throw new IllegalArgumentException("Activity cannot be null.");
-    if (a.getType() == null) throw new IllegalArgumentException("Activity type cannot be null.");
+  // Adds every activity or, if any is invalid, none. Each store touched is
+  // saved once, and the greens' community points are added in one call.
+  public void addActivities(List<Activity> batch) {
+    long stamp = lock.writeLock();
+    try {
+      Set<UUID> ids = new HashSet<>();
+      for (Activity a : batch) {
+        validateAdd(a);
+        if (!ids.add(a.getId()))
+          throw new IllegalStateException("Duplicate activity UUID: " + a.getId());
+      }
 
-    if (getById(a.getId()) != null)
-      throw new IllegalStateException("Duplicate activity UUID: " + a.getId());
+      Map<JsonStorage<Activity>, ActivityType> touched = new LinkedHashMap<>();
+      for (Activity a : batch) {
+        insert(a);
+        touched.putIfAbsent(getStorageByType(a.getType()), a.getType());
+      }
+      touched.forEach((storage, type) -> storage.save(storeValues(type)));
+
+      int communityPoints = 0;
+      for (Activity a : batch) {
+        fireSaved(a);
+        if (a.getType() == ActivityType.GREEN) {
+          history.append(HistoryEvent.completed(a));
+          communityPoints += a.getPointValue();
+        }
+      }
+      if (communityPoints > 0) settingsService.addCommunityPoints(communityPoints);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
 
-    if (a.getDeadline() != null && a.getDeadline().isBefore(LocalDate.now()))
-      throw new IllegalArgumentException("Activity deadline is in the past and cannot be added.");
+  private void add(Activity a) {
+    validateAdd(a);
+    insert(a);
+    getStorageByType(a.getType()).saveChange(storeValues(a.getType()), a);
+    fireSaved(a);
 
-    // Trade validation
-    if (a.getType() == ActivityType.TRADE_TASK || a.getType() == ActivityType.TRADE_GOODS) {
+    if (a.getType() == ActivityType.GREEN) {
+      history.append(HistoryEvent.completed(a));
+      settingsService.addCommunityPoints(a.getPointValue());
+    }
+  }
 
-      UUID performerID = a.getPerformerID();
+  private void validateAdd(Activity a) {
+    validateNew(a);
 
-      if (performerID == null)
-        throw new IllegalArgumentException("Trades require a performer.");
+    if (byId.containsKey(a.getId()))
+      throw new IllegalStateException("Duplicate activity UUID: " + a.getId());
 
-      if (memberService.getById(performerID) == null)
+    if (a.getType() == ActivityType.TRADE_TASK || a.getType() == ActivityType.TRADE_GOODS) {
+      if (memberService.getById(a.getPerformerID()) == null)
         throw new IllegalArgumentException("Performer does not exist.");
-
     }
+  }
+
+  // The rules that need no stored state. Static so the BulkImporter can
+  // check rows with them.
+  static void validateNew(Activity a) {
+    if (a == null) throw new IllegalArgumentException("Activity cannot be null.");
+    if (a.getType() == null) throw new IllegalArgumentException("Activity type cannot be null.");
+
+    if (a.getDeadline() != null && a.getDeadline().isBefore(LocalDate.now()))
+      throw new IllegalArgumentException("Activity deadline is in the past and cannot be added.");
+
+    // Trade validation
+    if ((a.getType() == ActivityType.TRADE_TASK || a.getType() == ActivityType.TRADE_GOODS)
+        && a.getPerformerID() == null)
+      throw new IllegalArgumentException("Trades require a performer.");
 
     if (a.getType() == ActivityType.COMMUNAL && a.getPerformerID() != null)
       throw new IllegalArgumentException("Communal activities cannot have a performer on creation.");
+  }
 
-    // Insert + save
-    List<Activity> list = getListByType(a.getType());
-    list.add(a);
-    saveList(list, a.getType());
-
-    if (a.getType() == ActivityType.GREEN) {
-      HistoryWriter.write(a);
-      settingsService.addCommunityPoints(a.getPointValue());
-    }
+  private void insert(Activity a) {
+    storePut(a);
+    byId.put(a.getId(), a);
+    index.add(a);
+    textIndex.add(a);
+    expiries.schedule(a.getId(), expiryDate(a));
   }
 
   // ========================================================================
   // DELETE ACTIVITY
   // ========================================================================
   public void deleteActivity(Activity a) {
+    long stamp = lock.writeLock();
+    try {
+      delete(a);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private void delete(Activity a) {
     if (a == null) throw new IllegalArgumentException("Activity cannot be null.");
 
-    List<Activity> list = getListByType(a.getType());
-    list.remove(a);
-    saveList(list, a.getType());
+    Activity removed = byId.get(a.getId());
+    if (removed != null && removed.getType() == a.getType()) {
+      storeRemove(removed);
+      byId.remove(removed.getId());
+      index.remove(removed);
+      textIndex.remove(removed);
+      expiries.cancel(removed.getId());
+      getStorageByType(removed.getType()).saveRemoval(storeValues(removed.getType()), removed);
+      fireRemoved(removed);
+    }
   }
 
   // ========================================================================
   // FETCHERS
   // ========================================================================
-  public List<Activity> getGreens() { return new ArrayList<>(greens); }
-  public List<Activity> getTrades() { return new ArrayList<>(trades); }
-  public List<Activity> getCommunal() { return new ArrayList<>(communal); }
+  // Read-only snapshots: later changes do not show up in a returned list.
+  public List<Activity> getGreens() { return stores.greens().values(); }
+  public List<Activity> getTrades() { return stores.trades().values(); }
+  public List<Activity> getCommunal() { return stores.communal().values(); }
 
   public List<Activity> getAll() {
-    int total = greens.size() + trades.size() + communal.size();
-    List<Activity> all = new ArrayList<>(total);
-    all.addAll(greens);
-    all.addAll(trades);
-    all.addAll(communal);
-    return all;
+    return stores.all();
+  }
+
+  // ========================================================================
+  // PAGING
+  // ========================================================================
+  // Activities in the same order as getAll() (or only those of one type when
+  // type is not null), pageSize at a time. Pass null as cursor for the first
+  // page, then the previous page's nextCursor.
+  public Page<Activity> getPage(ActivityType type, String cursor, int pageSize) {
+    Page.checkSize(pageSize);
+
+    int fromStore = 0;
+    Long afterSeq = null;
+    String position = Page.decode(cursor, "activity");
+    if (position != null) {
+      try {
+        int split = position.indexOf(':');
+        fromStore = Integer.parseInt(position.substring(0, split));
+        afterSeq = Long.parseLong(position.substring(split + 1));
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException("Invalid page cursor.");
+      }
+    }
+
+    Stores snapshot = stores;
+    List<PersistentSortedMap<Long, Activity>> order = List.of(snapshot.greens(), snapshot.trades(), snapshot.communal());
+    int lastStore = type == null ? order.size() - 1 : switch (type) {
+      case GREEN -> 0;
+      case TRADE_TASK, TRADE_GOODS -> 1;
+      case COMMUNAL -> 2;
+    };
+    if (type != null) fromStore = Math.max(fromStore, lastStore);
+
+    List<Activity> items = new ArrayList<>(pageSize);
+    int store = -1;
+    long seq = -1;
+    for (int i = fromStore; i <= lastStore; i++) {
+      Iterator<Map.Entry<Long, Activity>> it = order.get(i).entriesAfter(i == fromStore ? afterSeq : null);
+      while (it.hasNext()) {
+        Map.Entry<Long, Activity> e = it.next();
+        if (type != null && e.getValue().getType() != type) continue;
+        if (items.size() == pageSize) return new Page<>(items, Page.encode("activity", store + ":" + seq));
+
+        items.add(e.getValue());
+        store = i;
+        seq = e.getKey();
+      }
+    }
+    return new Page<>(items, null);
   }
 
   public Activity getById(UUID id) {
     if (id == null) return null;
 
-    for (Activity a : greens)    if (a.getId().equals(id)) return a;
-    for (Activity a : trades)    if (a.getId().equals(id)) return a;
-    for (Activity a : communal)  if (a.getId().equals(id)) return a;
+    return byId.get(id);
+  }
 
-    return null;
+  // Copy of the activity for editing, taken under the read lock so it never
+  // pairs fields from before a save with the version from after it.
+  public Activity copyOf(UUID id) {
+    Activity copy = read(() -> {
+      Activity a = byId.get(id);
+      return a != null ? a.copy() : null;
+    });
+    if (copy == null) throw new IllegalArgumentException("Activity not found.");
+    return copy;
+  }
+
+  private <T> T read(Supplier<T> reader) {
+    long stamp = lock.readLock();
+    try {
+      return reader.get();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  // ========================================================================
+  // INDEXED QUERIES
+  // ========================================================================
+  public List<Activity> getByType(ActivityType type) {
+    if (type == null) throw new IllegalArgumentException("Activity type cannot be null.");
+    return read(() -> index.byType(type));
+  }
+
+  public List<Activity> getOpen() { return read(index::open); }
+  public List<Activity> getCompleted() { return read(index::completed); }
+
+  public List<Activity> getOpen(ActivityType type) {
+    if (type == null) throw new IllegalArgumentException("Activity type cannot be null.");
+    return read(() -> index.open(type));
+  }
+
+  // Activities where the member is performer or receiver.
+  public List<Activity> getForMember(UUID memberId) {
+    if (memberId == null) throw new IllegalArgumentException("Member ID cannot be null.");
+    return read(() -> index.forParticipant(memberId));
+  }
+
+  // All activities that have a deadline, earliest first.
+  public List<Activity> getWithDeadline() {
+    return read(() -> index.deadlineBetween(null, null));
+  }
+
+  // Activities with a deadline between the two dates (inclusive), earliest first.
+  public List<Activity> getWithDeadlineBetween(LocalDate from, LocalDate to) {
+    if (from != null && to != null && from.isAfter(to))
+      throw new IllegalArgumentException("Start date must not be after end date.");
+    return read(() -> index.deadlineBetween(from, to));
+  }
+
+  // ========================================================================
+  // QUERY PLANNER
+  // ========================================================================
+  // Starts from whichever index yields the fewest candidates, then streams
+  // them through the rest of the query's conditions. Text queries start from
+  // the text index and keep its ranking unless the query sets its own order.
+  // The result is collected under the read lock, so the stream is safe to
+  // consume on any thread.
+  public Stream<Activity> query(ActivityQuery q) {
+    if (q == null) throw new IllegalArgumentException("Query cannot be null.");
+    return read(() -> plan(q).toList()).stream();
+  }
+
+  private Stream<Activity> plan(ActivityQuery q) {
+    if (q.getText() != null) {
+      Stream<Activity> result = textIndex.search(q.getText()).stream()
+          .map(byId::get)
+          .filter(q::matchesIgnoringText);
+      if (q.getOrder() != null) result = result.sorted(q.getOrder());
+      if (q.getLimit() >= 0) result = result.limit(q.getLimit());
+      return result;
+    }
+
+    Set<ActivityType> types = q.getTypes() != null ? q.getTypes() : EnumSet.allOf(ActivityType.class);
+
+    Stream<Activity> candidates = index.streamTypes(types, q.getCompleted());
+    int best = index.countTypes(types, q.getCompleted());
+
+    if (q.getParticipant() != null && index.countParticipant(q.getParticipant()) < best) {
+      candidates = index.streamParticipant(q.getParticipant());
+      best = index.countParticipant(q.getParticipant());
+    }
+
+    if (q.requiresDeadline() && index.countWithDeadline() < best) {
+      candidates = index.streamDeadline(q.getDeadlineFrom(), q.getDeadlineTo());
+    }
+
+    Stream<Activity> result = candidates.filter(q::matches);
+    if (q.getOrder() != null) result = result.sorted(q.getOrder());
+    if (q.getLimit() >= 0) result = result.limit(q.getLimit());
+    return result;
   }
 
   // ========================================================================
   // COMPLETE ACTIVITY
   // ========================================================================
   public void completeActivity(UUID id) {
+    long stamp = lock.writeLock();
+    try {
+      complete(id);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
 
-    if (id == null) throw new IllegalArgumentException("Activity ID cannot be null.");
-
-    Activity a = getById(id);
-    if (a == null) return;
+  // Saves the edited copy and completes it, or does neither if the edited
+  // activity cannot be completed.
+  public void updateAndCompleteActivity(Activity edited) {
+    long stamp = lock.writeLock();
+    try {
+      checkCompletable(edited);
+      update(edited);
+      complete(edited.getId());
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
 
+  // Throws if the activity, as given, cannot be completed. The balance
+  // check is repeated when the points are moved.
+  private void checkCompletable(Activity a) {
     ActivityType type = a.getType();
 
     // Communal
@@ -144,155 +480,274 @@ public class ActivityService {
       if (performerID.equals(receiverID))
         throw new IllegalArgumentException("Trade participants cannot be the same member.");
 
-      Member performer = memberService.getById(performerID);
-      Member receiver = memberService.getById(receiverID);
-
-      if (type == ActivityType.TRADE_TASK && performer.getPersonalPoints() < a.getPointValue())
+      if (type == ActivityType.TRADE_TASK && memberService.copyOf(performerID).getPersonalPoints() < a.getPointValue())
         throw new IllegalArgumentException("Performer doesn't have enough points.");
 
-      if (type == ActivityType.TRADE_GOODS && receiver.getPersonalPoints() < a.getPointValue())
+      if (type == ActivityType.TRADE_GOODS && memberService.copyOf(receiverID).getPersonalPoints() < a.getPointValue())
         throw new IllegalArgumentException("Receiver doesn't have enough points.");
     }
+  }
 
-    a.setCompletedAt(LocalDate.now());
-    HistoryWriter.write(a);
+  private void complete(UUID id) {
 
-    handlePoints(a);
+    if (id == null) throw new IllegalArgumentException("Activity ID cannot be null.");
+
+    Activity a = byId.get(id);
+    if (a == null) return;
+
+    ActivityType type = a.getType();
+    checkCompletable(a);
+
+    // Balances are checked and moved on copies, then saved together only if
+    // neither member changed in between; otherwise start over.
+    Retry.onConflict(TRANSFER_ATTEMPTS, () -> handlePoints(a));
+
+    a.setCompletedAt(LocalDate.now());
+    a.nextVersion();
+    index.update(a);
+    history.append(HistoryEvent.completed(a));
+    fireSaved(a);
 
     if (type == ActivityType.TRADE_TASK || type == ActivityType.TRADE_GOODS) {
-      trades.remove(a);
-      tradeStorage.save(trades);
+      storeRemove(a);
+      byId.remove(a.getId());
+      index.remove(a);
+      textIndex.remove(a);
+      expiries.cancel(a.getId());
+      tradeStorage.saveRemoval(storeValues(a.getType()), a);
+      fireRemoved(a);
     }
     else if (type == ActivityType.COMMUNAL) {
-      communalStorage.save(communal);
+      communalStorage.saveChange(storeValues(ActivityType.COMMUNAL), a);
     }
   }
 
   // ========================================================================
   // POINT TRANSFER
   // ========================================================================
+  private static final int TRANSFER_ATTEMPTS = 5;
+
   private void handlePoints(Activity a) {
 
-    Member performer = a.getPerformerID() != null ? memberService.getById(a.getPerformerID()) : null;
-    Member receiver  = a.getReceiverID() != null ? memberService.getById(a.getReceiverID()) : null;
+    Member performer = a.getPerformerID() != null ? memberService.copyOf(a.getPerformerID()) : null;
+    Member receiver  = a.getReceiverID() != null ? memberService.copyOf(a.getReceiverID()) : null;
 
     switch (a.getType()) {
 
       case COMMUNAL -> {
         performer.addPoints(a.getPointValue());
         performer.incrementTasksCompleted();
-        memberService.updateMember(performer);
+        memberService.updateMembers(new PointsLedger.Cause(PointsLedger.Reason.COMMUNAL, a.getId()), performer);
       }
 
       case TRADE_TASK -> {
+        if (performer.getPersonalPoints() < a.getPointValue())
+          throw new IllegalArgumentException("Performer doesn't have enough points.");
+
         receiver.addPoints(a.getPointValue());
         performer.subtractPoints(a.getPointValue());
         receiver.incrementTasksCompleted();
-        memberService.updateMember(receiver);
-        memberService.updateMember(performer);
+        memberService.updateMembers(new PointsLedger.Cause(PointsLedger.Reason.TRADE, a.getId()), receiver, performer);
       }
 
       case TRADE_GOODS -> {
+        if (receiver.getPersonalPoints() < a.getPointValue())
+          throw new IllegalArgumentException("Receiver doesn't have enough points.");
+
         receiver.subtractPoints(a.getPointValue());
         performer.addPoints(a.getPointValue());
-        memberService.updateMember(receiver);
-        memberService.updateMember(performer);
+        memberService.updateMembers(new PointsLedger.Cause(PointsLedger.Reason.TRADE, a.getId()), receiver, performer);
       }
     }
   }
 
   // ========================================================================
-  // WEEKLY GREEN RESET
+  // EXPIRY
   // ========================================================================
-  public void weeklyGreenReset() {
-    LocalDate now = LocalDate.now();
-    greens.removeIf(a -> a.getCreatedAt() != null && a.getCreatedAt().plusDays(7).isBefore(now));
-    greenStorage.save(greens);
+  // Greens expire once they are more than a week old; open trades the day
+  // after their deadline. Communal tasks are rolled over instead.
+  private static LocalDate expiryDate(Activity a) {
+    return switch (a.getType()) {
+      case GREEN -> a.getCreatedAt() != null ? a.getCreatedAt().plusDays(8) : null;
+      case TRADE_TASK, TRADE_GOODS ->
+          a.getCompletedAt() == null && a.getDeadline() != null ? a.getDeadline().plusDays(1) : null;
+      case COMMUNAL -> null;
+    };
+  }
+
+  // Removes the greens and trades that have expired by the given date.
+  // Expired trades are recorded in the history before they are removed.
+  public int expireDue(LocalDate date) {
+    long stamp = lock.writeLock();
+    try {
+      return expire(date);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private int expire(LocalDate date) {
+    List<UUID> due = expiries.pollDue(date);
+
+    for (UUID id : due) {
+      Activity a = byId.remove(id);
+      if (a == null) continue;
+
+      if (a.getType() != ActivityType.GREEN) history.append(HistoryEvent.expired(a));
+
+      storeRemove(a);
+      index.remove(a);
+      textIndex.remove(a);
+      getStorageByType(a.getType()).saveRemoval(storeValues(a.getType()), a);
+      fireRemoved(a);
+    }
+    return due.size();
+  }
+
+  // ========================================================================
+  // COMMUNAL ROLLOVER
+  // ========================================================================
+  // Reopens every communal task for another week and pays the weekly bonus,
+  // in one pass under the member write lock. The communal store, the members
+  // and the settings are each saved once; run through the CommandProcessor
+  // they are written together when the batch is flushed.
+  public void rolloverCommunal() {
+    rolloverCommunal(RolloverProgress.NONE);
+  }
+
+  // progress follows the member pass, which is most of the work.
+  public void rolloverCommunal(RolloverProgress progress) {
+    long stamp = lock.writeLock();
+    try {
+      rollover(progress);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private void rollover(RolloverProgress progress) {
+    LocalDate today = LocalDate.now();
+
+    List<Activity> communal = storeValues(ActivityType.COMMUNAL);
+    for (Activity a : communal) {
+      a.setDeadline(today.plusWeeks(1));
+      a.setCreatedAt(today);
+      a.setCompletedAt(null);
+      a.setPerformerID(null);
+      a.setReceiverID(null);
+      a.nextVersion();
+      index.update(a);
+      fireSaved(a);
+    }
+    communalStorage.save(new ArrayList<>(communal));
+
+    settingsService.updateLastResetDate();
+    memberService.applyWeeklyBonusAndReset(progress);
   }
 
   // ========================================================================
   // UPDATE ACTIVITY
   // ========================================================================
+  // Saves changes made to an activity. Changes made on a copy() are rejected
+  // with ConcurrentModificationException if the activity was saved by
+  // someone else since the copy was taken.
   public void updateActivity(Activity updated) {
+    long stamp = lock.writeLock();
+    try {
+      update(updated);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private void update(Activity updated) {
 
     if (updated == null)
       throw new IllegalArgumentException("Updated activity cannot be null.");
 
-    Activity current = getById(updated.getId());
+    Activity current = byId.get(updated.getId());
     if (current == null)
       throw new IllegalArgumentException("Activity not found: " + updated.getId());
 
     if (current.getType() != updated.getType())
       throw new IllegalArgumentException("Cannot change activity type.");
 
+    // Edits made on a copy() must start from the version that is stored now.
+    if (updated != current && updated.getVersion() != current.getVersion())
+      throw new ConcurrentModificationException("Activity was changed by someone else: " + current.getTitle());
+
     if (updated.getDeadline() != null &&
         updated.getDeadline().isBefore(LocalDate.now())) {
 
-      deleteActivity(current);
+      delete(current);
       return;
     }
 
-    List<Activity> list = getListByType(updated.getType());
-
-    for (Activity a : list) {
-      if (a.getId().equals(updated.getId())) {
-        a.setTitle(updated.getTitle());
-        a.setDescription(updated.getDescription());
-        a.setPointValue(updated.getPointValue());
-        a.setPerformerID(updated.getPerformerID());
-        a.setReceiverID(updated.getReceiverID());
-        a.setDeadline(updated.getDeadline());
-        break;
-      }
-    }
-
-    saveList(list, updated.getType());
+    current.setTitle(updated.getTitle());
+    current.setDescription(updated.getDescription());
+    current.setPointValue(updated.getPointValue());
+    current.setPerformerID(updated.getPerformerID());
+    current.setReceiverID(updated.getReceiverID());
+    current.setDeadline(updated.getDeadline());
+    current.nextVersion();
+    index.update(current);
+    textIndex.update(current);
+    expiries.schedule(current.getId(), expiryDate(current));
+
+    getStorageByType(updated.getType()).saveChange(storeValues(updated.getType()), current);
+    fireSaved(current);
   }
 
   // ========================================================================
-  // HELPERS
+  // LISTENERS
   // ========================================================================
-  private List<Activity> getListByType(ActivityType type) {
-    return switch (type) {
-      case GREEN -> greens;
-      case TRADE_TASK, TRADE_GOODS -> trades;
-      case COMMUNAL -> communal;
-    };
+  // Passes the listener every stored activity as saved, then every change as
+  // it is made. Runs under the write lock, so no change is missed or seen
+  // twice.
+  public void subscribe(ActivityListener listener) {
+    long stamp = lock.writeLock();
+    try {
+      for (Activity a : byId.values()) listener.saved(a);
+      listeners.add(listener);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
   }
 
-  private void saveList(List<Activity> list, ActivityType type) {
-    switch (type) {
-      case GREEN -> greenStorage.save(list);
-      case TRADE_TASK, TRADE_GOODS -> tradeStorage.save(list);
-      case COMMUNAL -> communalStorage.save(list);
-    }
+  private void fireSaved(Activity a) {
+    for (ActivityListener listener : listeners) listener.saved(a);
+  }
+
+  private void fireRemoved(Activity a) {
+    for (ActivityListener listener : listeners) listener.removed(a);
   }
 
   // ========================================================================
-  // HISTORY WRITER
+  // HELPERS
   // ========================================================================
-  public static class HistoryWriter {
+  // Adds or replaces a in its store and publishes the new version.
+  private void storePut(Activity a) {
+    long seq = seqById.computeIfAbsent(a.getId(), id -> nextSeq++);
+    Stores current = stores;
+    stores = current.with(a.getType(), current.of(a.getType()).put(seq, a));
+  }
 
-    private static final File file = new File("history.txt");
+  private void storeRemove(Activity a) {
+    Long seq = seqById.remove(a.getId());
+    if (seq == null) return;
+    Stores current = stores;
+    stores = current.with(a.getType(), current.of(a.getType()).remove(seq));
+  }
 
-    public static void write(Activity a) {
-      try (FileWriter w = new FileWriter(file, true)) {
-        w.write(format(a, AppContext.get().memberService()) + System.lineSeparator());
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
-    }
+  private List<Activity> storeValues(ActivityType type) {
+    return stores.of(type).values();
+  }
 
-    private static String format(Activity a, MemberService memberService) {
-      return String.format(
-          "[%s] %s | %s | %s → %s | %d points",
-          a.getCreatedAt(),
-          a.getType(),
-          a.getTitle(),
-          memberService.getNameById(a.getPerformerID()),
-          memberService.getNameById(a.getReceiverID()),
-          a.getPointValue()
-      );
-    }
+  private JsonStorage<Activity> getStorageByType(ActivityType type) {
+    return switch (type) {
+      case GREEN -> greenStorage;
+      case TRADE_TASK, TRADE_GOODS -> tradeStorage;
+      case COMMUNAL -> communalStorage;
+    };
   }
 }
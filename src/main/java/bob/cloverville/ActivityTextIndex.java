@@ -0,0 +1,137 @@
+package bob.cloverville;
+
+import java.util.*;
+
+// Inverted index over activity titles and descriptions. Text is split into
+// lower-case words; each word maps to the activities containing it with a
+// weight (title words count more than description words). Query words match
+// as prefixes, so "gard" finds "garden" and "gardening".
+public class ActivityTextIndex {
+
+  private static final int TITLE_WEIGHT = 3;
+  private static final int DESCRIPTION_WEIGHT = 1;
+  private static final int EXACT_BONUS = 2;
+
+  private final NavigableMap<String, Map<UUID, Integer>> postings = new TreeMap<>();
+
+  // Words each activity was indexed under, to undo them on update/remove.
+  private final Map<UUID, Map<String, Integer>> termsById = new HashMap<>();
+
+  // ========================================================================
+  // MAINTENANCE
+  // ========================================================================
+  public void add(Activity a) {
+    Map<String, Integer> terms = termsOf(a);
+    termsById.put(a.getId(), terms);
+    terms.forEach((term, weight) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(a.getId(), weight));
+  }
+
+  public void remove(Activity a) {
+    Map<String, Integer> terms = termsById.remove(a.getId());
+    if (terms == null) return;
+    for (String term : terms.keySet()) unlink(term, a.getId());
+  }
+
+  // Touches only the words whose weight changed.
+  public void update(Activity a) {
+    Map<String, Integer> old = termsById.get(a.getId());
+    if (old == null) {
+      add(a);
+      return;
+    }
+
+    Map<String, Integer> now = termsOf(a);
+    if (now.equals(old)) return;
+
+    for (String term : old.keySet()) {
+      if (!now.containsKey(term)) unlink(term, a.getId());
+    }
+    now.forEach((term, weight) -> {
+      if (!weight.equals(old.get(term)))
+        postings.computeIfAbsent(term, t -> new HashMap<>()).put(a.getId(), weight);
+    });
+    termsById.put(a.getId(), now);
+  }
+
+  private void unlink(String term, UUID id) {
+    Map<UUID, Integer> ids = postings.get(term);
+    if (ids == null) return;
+    ids.remove(id);
+    if (ids.isEmpty()) postings.remove(term);
+  }
+
+  private static Map<String, Integer> termsOf(Activity a) {
+    Map<String, Integer> terms = new HashMap<>();
+    for (String t : tokenize(a.getTitle())) terms.merge(t, TITLE_WEIGHT, Integer::sum);
+    for (String t : tokenize(a.getDescription())) terms.merge(t, DESCRIPTION_WEIGHT, Integer::sum);
+    return terms;
+  }
+
+  // ========================================================================
+  // SEARCH
+  // ========================================================================
+  // Ids of activities matching every word of the query, best match first.
+  public List<UUID> search(String query) {
+    List<String> words = tokenize(query);
+    if (words.isEmpty()) return List.of();
+
+    Map<UUID, Integer> scores = null;
+    for (String word : words) {
+      Map<UUID, Integer> wordScores = new HashMap<>();
+      for (Map.Entry<String, Map<UUID, Integer>> e : prefixRange(word).entrySet()) {
+        int bonus = e.getKey().equals(word) ? EXACT_BONUS : 1;
+        e.getValue().forEach((id, weight) -> wordScores.merge(id, weight * bonus, Integer::sum));
+      }
+
+      if (scores == null) {
+        scores = wordScores;
+      } else {
+        scores.keySet().retainAll(wordScores.keySet());
+        for (Map.Entry<UUID, Integer> e : scores.entrySet()) {
+          e.setValue(e.getValue() + wordScores.get(e.getKey()));
+        }
+      }
+      if (scores.isEmpty()) return List.of();
+    }
+
+    List<Map.Entry<UUID, Integer>> ranked = new ArrayList<>(scores.entrySet());
+    ranked.sort(Map.Entry.<UUID, Integer>comparingByValue().reversed());
+
+    List<UUID> ids = new ArrayList<>(ranked.size());
+    for (Map.Entry<UUID, Integer> e : ranked) ids.add(e.getKey());
+    return ids;
+  }
+
+  private SortedMap<String, Map<UUID, Integer>> prefixRange(String prefix) {
+    return postings.subMap(prefix, prefix + Character.MAX_VALUE);
+  }
+
+  // Same rule as search(), for checking a single activity without the index.
+  public static boolean matches(Activity a, List<String> words) {
+    List<String> title = tokenize(a.getTitle());
+    List<String> description = tokenize(a.getDescription());
+    for (String word : words) {
+      if (title.stream().noneMatch(t -> t.startsWith(word))
+          && description.stream().noneMatch(t -> t.startsWith(word)))
+        return false;
+    }
+    return true;
+  }
+
+  // Lower-case words made of letters and digits.
+  public static List<String> tokenize(String text) {
+    List<String> words = new ArrayList<>();
+    if (text == null) return words;
+
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (wordChar && start < 0) start = i;
+      else if (!wordChar && start >= 0) {
+        words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        start = -1;
+      }
+    }
+    return words;
+  }
+}
@@ -2,12 +2,25 @@ package bob.cloverville;
 
 import bob.cloverville.controllers.DashboardController;
 import com.google.gson.reflect.TypeToken;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.stage.Stage;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class AppContext {
 
@@ -17,10 +30,22 @@ public class AppContext {
   private Parent dashboardView;
   private DashboardController dashboardController;
 
-  private final MemberService memberService;
-  private final ActivityService activityService;
-  private final UserAccService userAccService;
-  private final SettingsService settingsService;
+  // Services load in parallel; the getters wait only for the one they return.
+  private final CompletableFuture<MemberService> memberService;
+  private final CompletableFuture<ActivityService> activityService;
+  private final CompletableFuture<UserAccService> userAccService;
+  private final CompletableFuture<SettingsService> settingsService;
+  private final CompletableFuture<CommunityStats> stats;
+
+  // How long each store took to load, by store name; printed once all are in.
+  private final Map<String, Long> loadTimesMillis = new ConcurrentHashMap<>();
+
+  private final WriteBehindQueue writeQueue;
+  private final CommandProcessor commands;
+  private final HistoryWriter history;
+  private final ActivityRollups rollups;
+  private ActivityScheduler scheduler;
+  private AsyncServices async;
 
   private UserAccount currentUser;
 
@@ -31,34 +56,136 @@ public class AppContext {
   private static final Type USER_LIST_TYPE =
       new TypeToken<java.util.List<UserAccount>>() {}.getType();
 
-  // Constructor initializes all services
+  private static final Type MEMBER_MAP_TYPE =
+      new TypeToken<java.util.Map<java.util.UUID, Member>>() {}.getType();
+
+  // Upper bound on how long a change may wait in memory before it is written.
+  private static final long WRITE_DELAY_MILLIS =
+      Long.getLong("cloverville.writeDelayMillis", 250);
+
+  // Commands that can be queued before submitters have to wait.
+  private static final int COMMAND_CAPACITY =
+      Integer.getInteger("cloverville.commandCapacity", 1024);
+
+  // History segments roll over at this size as well as at each new month.
+  private static final long HISTORY_SEGMENT_BYTES =
+      Long.getLong("cloverville.historySegmentBytes", 8L * 1024 * 1024);
+
+  // Gzip history segments once they are no longer written to.
+  private static final boolean COMPRESS_OLD_HISTORY =
+      Boolean.parseBoolean(System.getProperty("cloverville.compressOldHistory", "true"));
+
+  // Load members and activities from binary snapshots instead of parsing JSON.
+  // Off by default: it writes a .bin copy next to every JSON file.
+  private static final boolean BINARY_SNAPSHOTS =
+      Boolean.parseBoolean(System.getProperty("cloverville.binarySnapshots", "false"));
+
+  // Constructor starts loading all services in the background
   private AppContext() {
+    long started = System.nanoTime();
+
+    this.writeQueue = new WriteBehindQueue(WRITE_DELAY_MILLIS);
+    this.commands = new CommandProcessor(writeQueue, COMMAND_CAPACITY);
+
+    JsonStorage<Activity> greenStorage = writeQueue.wrap(new JournalStorage<>(
+        snapshotStorage(new JsonStorage<>("website/json/green.json", ACTIVITY_LIST_TYPE), BinarySnapshot.ACTIVITIES),
+        Activity.class, Activity::getId), Activity::copy);
 
-    JsonStorage<Activity> greenStorage =
-        new JsonStorage<>("website/json/green.json", ACTIVITY_LIST_TYPE);
+    JsonStorage<Activity> tradeStorage = writeQueue.wrap(new JournalStorage<>(
+        snapshotStorage(new JsonStorage<>("website/json/trade.json", ACTIVITY_LIST_TYPE), BinarySnapshot.ACTIVITIES),
+        Activity.class, Activity::getId), Activity::copy);
 
-    JsonStorage<Activity> tradeStorage =
-        new JsonStorage<>("website/json/trade.json", ACTIVITY_LIST_TYPE);
+    JsonStorage<Activity> communalStorage = writeQueue.wrap(new JournalStorage<>(
+        snapshotStorage(new JsonStorage<>("website/json/communal.json", ACTIVITY_LIST_TYPE), BinarySnapshot.ACTIVITIES),
+        Activity.class, Activity::getId), Activity::copy);
 
-    JsonStorage<Activity> communalStorage =
-        new JsonStorage<>("website/json/communal.json", ACTIVITY_LIST_TYPE);
+    JsonStorage<Member> memberStorage = writeQueue.wrap(new JournalStorage<>(
+        snapshotStorage(JsonStorage.keyed("website/json/members.json", MEMBER_MAP_TYPE, Member::getId), BinarySnapshot.MEMBERS),
+        Member.class, Member::getId), Member::copy);
 
-    JsonStorage<Settings> settingsStorage =
-        new JsonStorage<>("website/json/settings.json", Settings.class);
+    JsonStorage<Settings> settingsStorage = writeQueue.wrap(
+        new JsonStorage<>("website/json/settings.json", Settings.class));
+
+    JsonStorage<UserAccount> userStorage = writeQueue.wrap(
+        new JsonStorage<>("Json/account.json", USER_LIST_TYPE));
+
+    ExecutorService loader = Executors.newFixedThreadPool(
+        Math.min(6, Runtime.getRuntime().availableProcessors() + 1),
+        r -> {
+          Thread t = new Thread(r, "cloverville-loader");
+          t.setDaemon(true);
+          return t;
+        });
+
+    // Accounts first: the login screen needs nothing else.
+    this.userAccService = load("accounts", loader, () -> new UserAccService(userStorage));
+    this.settingsService = load("settings", loader, () -> new SettingsService(settingsStorage));
+    this.memberService = load("members", loader,
+        () -> new MemberService(memberStorage, new PointsLedger(Path.of("ledger"), writeQueue)));
+
+    // Names are looked up on the history thread, by which time members are loaded.
+    this.history = new HistoryWriter(
+        new HistoryLog(Path.of("history"), HISTORY_SEGMENT_BYTES, COMPRESS_OLD_HISTORY),
+        id -> memberService.join().getNameById(id));
+    // Legacy files are read on the history thread.
+    Function<String, UUID> idsByName = name -> {
+      Member m = memberService.join().getByName(name);
+      return m != null ? m.getId() : null;
+    };
+    history.importLegacy(idsByName, Path.of("history.txt"), Path.of("history.jsonl"));
+
+    // Catches up from the history on the history thread.
+    this.rollups = new ActivityRollups(Path.of("rollups"), writeQueue);
+    rollups.attach(history);
+
+    CompletableFuture<List<Activity>> greens = load("green", loader, greenStorage::load);
+    CompletableFuture<List<Activity>> trades = load("trade", loader, tradeStorage::load);
+    CompletableFuture<List<Activity>> communal = load("communal", loader, communalStorage::load);
+
+    this.activityService = CompletableFuture.allOf(greens, trades, communal, memberService, settingsService)
+        .thenApply(ignored -> new ActivityService(
+            greenStorage,
+            tradeStorage,
+            communalStorage,
+            greens.join(),
+            trades.join(),
+            communal.join(),
+            memberService.join(),
+            settingsService.join(),
+            history
+        ));
+
+    // Built from the loaded services; the ledger replay is timed as "stats".
+    JsonStorage<CommunityStats.Snapshot> statsStorage =
+        new JsonStorage<>("website/json/stats.json", CommunityStats.Snapshot.class);
+    this.stats = activityService.thenApply(activities -> {
+      long start = System.nanoTime();
+      CommunityStats s = new CommunityStats(statsStorage, writeQueue);
+      s.attach(activities, memberService.join());
+      loadTimesMillis.put("stats", (System.nanoTime() - start) / 1_000_000);
+      return s;
+    });
+
+    CompletableFuture.allOf(stats, userAccService)
+        .whenComplete((ignored, error) -> {
+          loader.shutdown();
+          if (error != null) error.printStackTrace();
+          else System.out.println("Loaded in " + (System.nanoTime() - started) / 1_000_000
+              + " ms " + new TreeMap<>(loadTimesMillis));
+        });
+  }
 
-    JsonStorage<UserAccount> userStorage =
-        new JsonStorage<>("Json/account.json", USER_LIST_TYPE);
+  private <T> CompletableFuture<T> load(String store, ExecutorService loader, Supplier<T> task) {
+    return CompletableFuture.supplyAsync(() -> {
+      long start = System.nanoTime();
+      T result = task.get();
+      loadTimesMillis.put(store, (System.nanoTime() - start) / 1_000_000);
+      return result;
+    }, loader);
+  }
 
-    this.memberService = new MemberService("website/json/members.json");
-    this.settingsService = new SettingsService(settingsStorage);
-    this.activityService = new ActivityService(
-        greenStorage,
-        tradeStorage,
-        communalStorage,
-        memberService,
-        settingsService
-    );
-    this.userAccService = new UserAccService(userStorage);
+  private static <T> JsonStorage<T> snapshotStorage(JsonStorage<T> json, BinarySnapshot.Codec<T> codec) {
+    return BINARY_SNAPSHOTS ? new BinarySnapshotStorage<>(json, codec) : json;
   }
 
   // Thread-safe Singleton getter (optional but cleaner)
@@ -73,19 +200,71 @@ public class AppContext {
   // Service Getters
   // -----------------
   public MemberService memberService() {
-    return memberService;
+    return memberService.join();
   }
 
   public ActivityService activityService() {
-    return activityService;
+    return activityService.join();
   }
 
   public UserAccService userAccService() {
-    return userAccService;
+    return userAccService.join();
   }
 
   public SettingsService settingsService() {
-    return settingsService;
+    return settingsService.join();
+  }
+
+  // Per day, week and month series of greens and completed tasks.
+  public ActivityRollups rollups() {
+    return rollups;
+  }
+
+  // Running counts and weekly totals, for the dashboard and stats.json.
+  public CommunityStats stats() {
+    return stats.join();
+  }
+
+  // The single writer all service mutations go through.
+  public CommandProcessor commands() {
+    return commands;
+  }
+
+  // Mutations for the UI: run by the command processor, results delivered
+  // on the FX thread.
+  public synchronized AsyncServices async() {
+    if (async == null) async = new AsyncServices(this, commands, Platform::runLater);
+    return async;
+  }
+
+  // Activity history: appends and date/member queries.
+  public HistoryWriter history() {
+    return history;
+  }
+
+  // -----------------
+  // Scheduler
+  // -----------------
+  // Runs overdue expiries and resets now, then keeps running them as they
+  // fall due. Jobs go through the command processor; onChange is called on
+  // dispatch after any of them changed data. Later calls do nothing.
+  public synchronized void startScheduler(Executor dispatch, Runnable onChange) {
+    if (scheduler != null) return;
+    scheduler = new ActivityScheduler(activityService(), memberService(), settingsService(), commands, dispatch, onChange);
+    scheduler.start();
+  }
+
+  // -----------------
+  // Shutdown
+  // -----------------
+  // Writes out everything still queued. Must run before the JVM exits.
+  public void shutdown() {
+    synchronized (this) {
+      if (scheduler != null) scheduler.shutdown();
+    }
+    commands.shutdown();
+    history.close();
+    writeQueue.shutdown();
   }
 
   // -----------------
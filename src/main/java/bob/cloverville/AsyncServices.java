@@ -0,0 +1,184 @@
+package bob.cloverville;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Runs service mutations off the UI thread. Every call is submitted to the
+// CommandProcessor, which applies it and writes it out, and the returned
+// future is completed on the UI executor, so callbacks chained with whenComplete
+// or thenAccept can touch controls directly. Failures complete the future
+// with the exception the service threw, not a CompletionException.
+//
+// Reads stay on the services: they are in-memory index lookups and cheaper
+// than the hop to another thread.
+public class AsyncServices {
+
+  private final AppContext context;
+  private final CommandProcessor commands;
+  private final Executor ui;
+
+  // ui is where results are delivered (Platform::runLater in the app).
+  AsyncServices(AppContext context, CommandProcessor commands, Executor ui) {
+    this.context = context;
+    this.commands = commands;
+    this.ui = ui;
+  }
+
+  // ========================================================================
+  // ACTIVITIES
+  // ========================================================================
+  public CompletableFuture<Void> addActivity(Activity a) {
+    return run(() -> context.activityService().addActivity(a));
+  }
+
+  // Adds the activity and, if it already names both sides, completes it in
+  // the same command.
+  public CompletableFuture<Void> addAndCompleteActivity(Activity a) {
+    return run(() -> {
+      ActivityService activities = context.activityService();
+      activities.addActivity(a);
+      if (a.getPerformerID() != null && a.getReceiverID() != null)
+        activities.completeActivity(a.getId());
+    });
+  }
+
+  public CompletableFuture<Void> updateActivity(Activity a) {
+    return run(() -> context.activityService().updateActivity(a));
+  }
+
+  // Saves the edited copy and completes it, or neither.
+  public CompletableFuture<Void> updateAndCompleteActivity(Activity a) {
+    return run(() -> context.activityService().updateAndCompleteActivity(a));
+  }
+
+  public CompletableFuture<Void> completeActivity(UUID id) {
+    return run(() -> context.activityService().completeActivity(id));
+  }
+
+  public CompletableFuture<Void> deleteActivity(Activity a) {
+    return run(() -> context.activityService().deleteActivity(a));
+  }
+
+  // progress is delivered on the UI executor.
+  public CompletableFuture<Void> rolloverCommunal(RolloverProgress progress) {
+    RolloverProgress onUi = onUi(progress);
+    return run(() -> context.activityService().rolloverCommunal(onUi));
+  }
+
+  public CompletableFuture<BulkImporter.Batch<Activity>> importActivities(Path file) {
+    return importFile(() -> importer().readActivities(file), batch -> context.activityService().addActivities(batch));
+  }
+
+  // ========================================================================
+  // MEMBERS
+  // ========================================================================
+  public CompletableFuture<Void> addMember(Member m) {
+    return run(() -> context.memberService().addMember(m));
+  }
+
+  public CompletableFuture<Void> updateMember(Member m) {
+    return run(() -> context.memberService().updateMember(m));
+  }
+
+  public CompletableFuture<Void> deleteMember(Member m) {
+    return run(() -> context.memberService().deleteMember(m));
+  }
+
+  public CompletableFuture<BulkImporter.Batch<Member>> importMembers(Path file) {
+    return importFile(() -> importer().readMembers(file), batch -> context.memberService().addMembers(batch));
+  }
+
+  // Resets every member's points and records the reset date. progress is
+  // delivered on the UI executor.
+  public CompletableFuture<Void> resetAllPoints(RolloverProgress progress) {
+    RolloverProgress onUi = onUi(progress);
+    return run(() -> {
+      context.memberService().resetAllPoints(onUi);
+      context.settingsService().updatePointResetDate();
+    });
+  }
+
+  // ========================================================================
+  // BULK IMPORT
+  // ========================================================================
+  private interface FileRead<T> {
+    BulkImporter.Batch<T> read() throws IOException;
+  }
+
+  private BulkImporter importer() {
+    return new BulkImporter(context.memberService());
+  }
+
+  // Reads and checks the file off the command thread, so other commands are
+  // not held up, then adds every row in one command. If any row is invalid
+  // nothing is added; the batch returned lists the errors.
+  private <T> CompletableFuture<BulkImporter.Batch<T>> importFile(FileRead<T> reader, Consumer<List<T>> add) {
+    CompletableFuture<BulkImporter.Batch<T>> result = new CompletableFuture<>();
+    CompletableFuture.supplyAsync(() -> {
+          try {
+            return reader.read();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        })
+        .thenCompose(batch -> !batch.isValid()
+            ? CompletableFuture.completedFuture(batch)
+            : commands.submit(() -> {
+              add.accept(batch.records());
+              return batch;
+            }))
+        .whenComplete((value, error) -> ui.execute(() -> {
+          if (error != null) result.completeExceptionally(unwrap(error));
+          else result.complete(value);
+        }));
+    return result;
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    while ((error instanceof CompletionException || error instanceof UncheckedIOException) && error.getCause() != null)
+      error = error.getCause();
+    return error;
+  }
+
+  // ========================================================================
+  // SETTINGS & ACCOUNTS
+  // ========================================================================
+  public CompletableFuture<Void> updateSettings(int communityPoints, String communityGoal, int targetPoints) {
+    return run(() -> context.settingsService().updateSettings(communityPoints, communityGoal, targetPoints));
+  }
+
+  public CompletableFuture<Void> changePassword(UserAccount user, String newHash) {
+    return run(() -> context.userAccService().changePassword(user, newHash));
+  }
+
+  // ========================================================================
+  // EXECUTION
+  // ========================================================================
+  public CompletableFuture<Void> run(Runnable task) {
+    return call(() -> {
+      task.run();
+      return null;
+    });
+  }
+
+  private RolloverProgress onUi(RolloverProgress progress) {
+    return (done, total) -> ui.execute(() -> progress.report(done, total));
+  }
+
+  public <T> CompletableFuture<T> call(Supplier<T> task) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    commands.submit(task).whenComplete((value, error) -> ui.execute(() -> {
+      if (error != null) result.completeExceptionally(error);
+      else result.complete(value);
+    }));
+    return result;
+  }
+}
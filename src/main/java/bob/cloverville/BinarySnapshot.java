@@ -0,0 +1,260 @@
+package bob.cloverville;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Compact binary copy of a record list, read back with absolute gets on a
+// single buffer. Layout:
+//
+//   header   MAGIC, VERSION, codec kind, record size, record count,
+//            string count, string table offset (long)
+//   records  fixed-width, one per item (see the codecs below)
+//   strings  int offsets[count + 1], then the UTF-8 bytes of every string
+//
+// UUIDs are two longs, dates are epoch days (NO_DATE for null), and titles,
+// descriptions and names are indexes into the shared string table.
+public final class BinarySnapshot {
+
+  private static final int MAGIC = 0x434C5642; // "CLVB"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 32;
+  private static final int NO_DATE = Integer.MIN_VALUE;
+  private static final int NO_STRING = -1;
+
+  private BinarySnapshot() {}
+
+  // ========================================================================
+  // CODECS
+  // ========================================================================
+  public interface Codec<T> {
+    int kind();
+    int recordSize();
+    void write(ByteBuffer out, T item, StringTable strings);
+    T read(ByteBuffer in, int at, String[] strings);
+  }
+
+  // id(16) name(4) points(4) tasks(4) padding(4)
+  public static final Codec<Member> MEMBERS = new Codec<>() {
+    @Override public int kind() { return 1; }
+    @Override public int recordSize() { return 32; }
+
+    @Override
+    public void write(ByteBuffer out, Member m, StringTable strings) {
+      putUuid(out, m.getId());
+      out.putInt(strings.ref(m.getName()));
+      out.putInt(m.getPersonalPoints());
+      out.putInt(m.getTotalTasksCompleted());
+      out.putInt(0);
+    }
+
+    @Override
+    public Member read(ByteBuffer in, int at, String[] strings) {
+      return new Member(
+          getUuid(in, at),
+          string(strings, in.getInt(at + 16)),
+          in.getInt(at + 20),
+          in.getInt(at + 24));
+    }
+  };
+
+  // id(16) type(4) title(4) description(4) points(4) performer(16) receiver(16)
+  // createdAt(4) deadline(4) completedAt(4) flags(4)
+  public static final Codec<Activity> ACTIVITIES = new Codec<>() {
+    private static final int HAS_PERFORMER = 1;
+    private static final int HAS_RECEIVER = 2;
+
+    @Override public int kind() { return 2; }
+    @Override public int recordSize() { return 80; }
+
+    @Override
+    public void write(ByteBuffer out, Activity a, StringTable strings) {
+      int flags = (a.getPerformerID() != null ? HAS_PERFORMER : 0)
+          | (a.getReceiverID() != null ? HAS_RECEIVER : 0);
+
+      putUuid(out, a.getId());
+      out.putInt(a.getType().ordinal());
+      out.putInt(strings.ref(a.getTitle()));
+      out.putInt(strings.ref(a.getDescription()));
+      out.putInt(a.getPointValue());
+      putUuid(out, a.getPerformerID());
+      putUuid(out, a.getReceiverID());
+      out.putInt(epochDay(a.getCreatedAt()));
+      out.putInt(epochDay(a.getDeadline()));
+      out.putInt(epochDay(a.getCompletedAt()));
+      out.putInt(flags);
+    }
+
+    @Override
+    public Activity read(ByteBuffer in, int at, String[] strings) {
+      int flags = in.getInt(at + 76);
+      return new Activity(
+          getUuid(in, at),
+          ActivityType.values()[in.getInt(at + 16)],
+          string(strings, in.getInt(at + 20)),
+          string(strings, in.getInt(at + 24)),
+          in.getInt(at + 28),
+          (flags & HAS_PERFORMER) != 0 ? getUuid(in, at + 32) : null,
+          (flags & HAS_RECEIVER) != 0 ? getUuid(in, at + 48) : null,
+          date(in.getInt(at + 64)),
+          date(in.getInt(at + 68)),
+          date(in.getInt(at + 72)));
+    }
+  };
+
+  // ========================================================================
+  // WRITE
+  // ========================================================================
+  public static <T> void write(Path file, List<T> items, Codec<T> codec) throws IOException {
+    StringTable strings = new StringTable();
+
+    ByteBuffer records = ByteBuffer.allocate(items.size() * codec.recordSize()).order(ByteOrder.LITTLE_ENDIAN);
+    for (T item : items) {
+      codec.write(records, item, strings);
+    }
+
+    byte[] stringData = strings.encode();
+    long stringOffset = HEADER_SIZE + (long) records.capacity();
+
+    ByteBuffer out = ByteBuffer.allocate(Math.toIntExact(stringOffset + stringData.length))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    out.putInt(MAGIC);
+    out.putInt(VERSION);
+    out.putInt(codec.kind());
+    out.putInt(codec.recordSize());
+    out.putInt(items.size());
+    out.putInt(strings.size());
+    out.putLong(stringOffset);
+    out.put(records.array());
+    out.put(stringData);
+
+    DurableFile.write(file, out.array());
+  }
+
+  // ========================================================================
+  // READ
+  // ========================================================================
+  // Returns null if the file is missing, fails its checksum or was not
+  // written by this codec.
+  public static <T> List<T> read(Path file, Codec<T> codec) throws IOException {
+    if (!Files.exists(file)) return null;
+
+    // Read into the heap rather than mapped: a mapping stays open until it is
+    // garbage collected, and on Windows the file cannot be replaced while it is.
+    byte[] content = Files.readAllBytes(file);
+    long size = content.length;
+    if (size < HEADER_SIZE) return null;
+
+    ByteBuffer in = ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+    if (!DurableFile.verify(file, in)) return null;
+
+    if (in.getInt(0) != MAGIC || in.getInt(4) != VERSION
+        || in.getInt(8) != codec.kind() || in.getInt(12) != codec.recordSize())
+      return null;
+
+    int count = in.getInt(16);
+    int stringCount = in.getInt(20);
+    long stringOffset = in.getLong(24);
+    if (count < 0 || stringOffset != HEADER_SIZE + (long) count * codec.recordSize() || stringOffset > size)
+      return null;
+
+    String[] strings = readStrings(in, (int) stringOffset, stringCount, size);
+    if (strings == null) return null;
+
+    List<T> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      items.add(codec.read(in, HEADER_SIZE + i * codec.recordSize(), strings));
+    }
+    return items;
+  }
+
+  private static String[] readStrings(ByteBuffer in, int at, int count, long size) {
+    long dataStart = at + 4L * (count + 1);
+    if (count < 0 || dataStart > size) return null;
+
+    String[] strings = new String[count];
+    byte[] scratch = new byte[256];
+    for (int i = 0; i < count; i++) {
+      int from = in.getInt(at + 4 * i);
+      int to = in.getInt(at + 4 * (i + 1));
+      int length = to - from;
+      if (length < 0 || dataStart + to > size) return null;
+
+      if (scratch.length < length) scratch = new byte[length];
+      in.get((int) dataStart + from, scratch, 0, length);
+      strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+    return strings;
+  }
+
+  // ========================================================================
+  // STRING TABLE
+  // ========================================================================
+  // Deduplicates strings while records are written; repeated titles are stored once.
+  public static final class StringTable {
+    private final Map<String, Integer> refs = new HashMap<>();
+    private final List<byte[]> values = new ArrayList<>();
+    private int totalBytes;
+
+    int ref(String s) {
+      if (s == null) return NO_STRING;
+      return refs.computeIfAbsent(s, key -> {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        values.add(bytes);
+        totalBytes += bytes.length;
+        return values.size() - 1;
+      });
+    }
+
+    int size() {
+      return values.size();
+    }
+
+    byte[] encode() {
+      ByteBuffer out = ByteBuffer.allocate(4 * (values.size() + 1) + totalBytes).order(ByteOrder.LITTLE_ENDIAN);
+      int offset = 0;
+      for (byte[] value : values) {
+        out.putInt(offset);
+        offset += value.length;
+      }
+      out.putInt(offset);
+      for (byte[] value : values) {
+        out.put(value);
+      }
+      return out.array();
+    }
+  }
+
+  // ========================================================================
+  // HELPERS
+  // ========================================================================
+  private static void putUuid(ByteBuffer out, UUID id) {
+    out.putLong(id != null ? id.getMostSignificantBits() : 0L);
+    out.putLong(id != null ? id.getLeastSignificantBits() : 0L);
+  }
+
+  private static UUID getUuid(ByteBuffer in, int at) {
+    return new UUID(in.getLong(at), in.getLong(at + 8));
+  }
+
+  private static int epochDay(LocalDate date) {
+    return date != null ? Math.toIntExact(date.toEpochDay()) : NO_DATE;
+  }
+
+  private static LocalDate date(int epochDay) {
+    return epochDay != NO_DATE ? LocalDate.ofEpochDay(epochDay) : null;
+  }
+
+  private static String string(String[] strings, int ref) {
+    return ref != NO_STRING ? strings[ref] : null;
+  }
+}
@@ -0,0 +1,68 @@
+package bob.cloverville;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Keeps a binary copy (<file>.bin) next to a JSON file and loads from it when
+// it is at least as new as the JSON and passes its checksum; otherwise the
+// JSON is loaded and the copy rewritten. The JSON is still written on every save,
+// so the website and anything else reading it keep working.
+public class BinarySnapshotStorage<T> extends JsonStorage<T> {
+
+  private final BinarySnapshot.Codec<T> codec;
+  private final Path jsonPath;
+  private final Path binaryPath;
+
+  public BinarySnapshotStorage(JsonStorage<T> json, BinarySnapshot.Codec<T> codec) {
+    super(json);
+    this.codec = codec;
+    this.jsonPath = Path.of(json.getFilePath());
+    this.binaryPath = Path.of(json.getFilePath() + ".bin");
+  }
+
+  // -------- LOAD --------
+  @Override
+  public List<T> load() {
+    if (isBinaryCurrent()) {
+      try {
+        List<T> data = BinarySnapshot.read(binaryPath, codec);
+        if (data != null) return data;
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+
+    // No usable binary copy (first run, or the JSON was edited by hand).
+    List<T> data = super.load();
+    writeBinary(data);
+    return data;
+  }
+
+  private boolean isBinaryCurrent() {
+    try {
+      return Files.exists(binaryPath)
+          && (!Files.exists(jsonPath)
+          || Files.getLastModifiedTime(binaryPath).compareTo(Files.getLastModifiedTime(jsonPath)) >= 0);
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  // -------- SAVE --------
+  @Override
+  void write(List<T> data) {
+    // JSON first, so the binary copy is never older than the file it mirrors.
+    // The JSON is the authoritative copy; a failed binary write only costs startup time.
+    super.write(data);
+    writeBinary(data);
+  }
+
+  private void writeBinary(List<T> data) {
+    try {
+      BinarySnapshot.write(binaryPath, data, codec);
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -0,0 +1,343 @@
+package bob.cloverville;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Function;
+
+// Reads members or activities from a CSV file (with a header row) or from
+// NDJSON (one JSON object per line). The file is streamed in chunks of
+// CHUNK_ROWS records; each chunk is parsed and checked in parallel with the
+// rules the services apply. The batch holds the rows that pass and an error
+// for each row that does not. Nothing is added here: callers add the batch
+// only if it is valid (AsyncServices.importFile adds nothing if any row
+// failed), through addMembers or addActivities, in one save.
+//
+// Member columns: name, points (default 10), tasks (default 0).
+// Activity columns: type, title, description, points, performer, receiver,
+// deadline. performer and receiver take a member id or exact name; deadline
+// is an ISO date such as 2026-10-31.
+//
+// Column names are matched ignoring case, unknown columns are ignored and
+// fields are trimmed.
+public class BulkImporter {
+
+  private static final int CHUNK_ROWS = 4096;
+
+  public enum Format {
+    CSV,
+    NDJSON;
+
+    // By extension: .csv, or .ndjson / .jsonl.
+    public static Format of(Path file) {
+      String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+      if (name.endsWith(".csv")) return CSV;
+      if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) return NDJSON;
+      throw new IllegalArgumentException("Unsupported file type: " + file.getFileName());
+    }
+  }
+
+  // line is where the record starts in the file, counting from 1.
+  public record RowError(long line, String message) {
+    @Override
+    public String toString() {
+      return "Line " + line + ": " + message;
+    }
+  }
+
+  // The valid rows, in file order, and an error for each invalid one.
+  public record Batch<T>(List<T> records, List<RowError> errors) {
+    public boolean isValid() {
+      return errors.isEmpty();
+    }
+  }
+
+  private final MemberService members;
+
+  // members resolves performer and receiver names.
+  public BulkImporter(MemberService members) {
+    this.members = members;
+  }
+
+  // ========================================================================
+  // MEMBERS
+  // ========================================================================
+  public Batch<Member> readMembers(Path file) throws IOException {
+    try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      return readMembers(in, Format.of(file));
+    }
+  }
+
+  public Batch<Member> readMembers(Reader in, Format format) throws IOException {
+    return read(in, format, List.of("name"), this::toMember);
+  }
+
+  private Member toMember(Map<String, String> row) {
+    Member m = new Member(
+        required(row, "name"),
+        number(row, "points", 10),
+        number(row, "tasks", 0));
+    MemberService.validateMember(m);
+    return m;
+  }
+
+  // ========================================================================
+  // ACTIVITIES
+  // ========================================================================
+  public Batch<Activity> readActivities(Path file) throws IOException {
+    try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      return readActivities(in, Format.of(file));
+    }
+  }
+
+  public Batch<Activity> readActivities(Reader in, Format format) throws IOException {
+    return read(in, format, List.of("type", "title", "points"), this::toActivity);
+  }
+
+  private Activity toActivity(Map<String, String> row) {
+    String type = required(row, "type");
+    ActivityType activityType;
+    try {
+      activityType = ActivityType.valueOf(type.toUpperCase(Locale.ROOT).replace(' ', '_'));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown activity type: " + type);
+    }
+
+    String deadline = row.get("deadline");
+    LocalDate date = null;
+    if (deadline != null && !deadline.isEmpty()) {
+      try {
+        date = LocalDate.parse(deadline);
+      } catch (DateTimeParseException e) {
+        throw new IllegalArgumentException("Deadline must be a date like 2026-10-31, not: " + deadline);
+      }
+    }
+
+    Activity a = new Activity(
+        required(row, "title"),
+        row.getOrDefault("description", ""),
+        number(row, "points", null),
+        member(row, "performer"),
+        member(row, "receiver"),
+        activityType,
+        date);
+    ActivityService.validateNew(a);
+    return a;
+  }
+
+  // Id of the member named by id or exact name; null if the field is empty.
+  private UUID member(Map<String, String> row, String column) {
+    String value = row.get(column);
+    if (value == null || value.isEmpty()) return null;
+    try {
+      UUID id = UUID.fromString(value);
+      members.getById(id);  // throws if unknown
+      return id;
+    } catch (IllegalArgumentException notAnId) {
+      Member m = members.getByName(value);
+      if (m == null) throw new IllegalArgumentException("Unknown " + column + ": " + value);
+      return m.getId();
+    }
+  }
+
+  // ========================================================================
+  // FIELDS
+  // ========================================================================
+  private static String required(Map<String, String> row, String column) {
+    String value = row.get(column);
+    if (value == null || value.isEmpty())
+      throw new IllegalArgumentException("Missing " + column);
+    return value;
+  }
+
+  // fallback for an empty field, or null if the field is required.
+  private static int number(Map<String, String> row, String column, Integer fallback) {
+    String value = row.get(column);
+    if (value == null || value.isEmpty()) {
+      if (fallback == null) throw new IllegalArgumentException("Missing " + column);
+      return fallback;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(column + " must be a whole number, not: " + value);
+    }
+  }
+
+  // ========================================================================
+  // PIPELINE
+  // ========================================================================
+  // One record as read: where it starts and its raw text, parsed into fields
+  // on the parallel pass.
+  private record Row(long line, String text) {}
+
+  // What a row turned into: a record or an error.
+  private record Outcome<T>(T record, RowError error) {}
+
+  private <T> Batch<T> read(Reader in, Format format, List<String> required,
+                            Function<Map<String, String>, T> convert) throws IOException {
+    RowReader rows = new RowReader(in instanceof BufferedReader b ? b : new BufferedReader(in), format);
+    String[] header = format == Format.CSV ? readHeader(rows, required) : null;
+
+    List<T> records = new ArrayList<>();
+    List<RowError> errors = new ArrayList<>();
+    List<Row> chunk = new ArrayList<>(CHUNK_ROWS);
+    Row row;
+    do {
+      row = rows.next();
+      if (row != null) chunk.add(row);
+      if (chunk.size() == CHUNK_ROWS || (row == null && !chunk.isEmpty())) {
+        List<Outcome<T>> outcomes = chunk.parallelStream()
+            .map(r -> convert(r, format, header, convert))
+            .toList();
+        for (Outcome<T> o : outcomes) {
+          if (o.error() != null) errors.add(o.error());
+          else records.add(o.record());
+        }
+        chunk.clear();
+      }
+    } while (row != null);
+
+    return new Batch<>(records, errors);
+  }
+
+  private static <T> Outcome<T> convert(Row row, Format format, String[] header,
+                                        Function<Map<String, String>, T> convert) {
+    try {
+      Map<String, String> fields = format == Format.CSV
+          ? csvFields(row.text(), header)
+          : jsonFields(row.text());
+      return new Outcome<>(convert.apply(fields), null);
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      return new Outcome<>(null, new RowError(row.line(), e.getMessage()));
+    }
+  }
+
+  // Lower-cased column names. A bad header fails the whole file.
+  private static String[] readHeader(RowReader rows, List<String> required) throws IOException {
+    Row first = rows.next();
+    if (first == null) throw new IllegalArgumentException("The file is empty.");
+
+    List<String> columns = splitCsv(first.text());
+    String[] header = new String[columns.size()];
+    for (int i = 0; i < header.length; i++) header[i] = columns.get(i).toLowerCase(Locale.ROOT);
+    for (String column : required) {
+      if (!Arrays.asList(header).contains(column))
+        throw new IllegalArgumentException("Missing column: " + column);
+    }
+    return header;
+  }
+
+  private static Map<String, String> csvFields(String text, String[] header) {
+    List<String> values = splitCsv(text);
+    if (values.size() != header.length)
+      throw new IllegalArgumentException("Expected " + header.length + " fields, found " + values.size());
+
+    Map<String, String> fields = new HashMap<>();
+    for (int i = 0; i < header.length; i++) fields.put(header[i], values.get(i));
+    return fields;
+  }
+
+  private static Map<String, String> jsonFields(String text) {
+    JsonElement parsed;
+    try {
+      parsed = JsonParser.parseString(text);
+    } catch (JsonParseException e) {
+      throw new IllegalArgumentException("Not valid JSON");
+    }
+    if (!parsed.isJsonObject()) throw new IllegalArgumentException("Not a JSON object");
+
+    Map<String, String> fields = new HashMap<>();
+    for (Map.Entry<String, JsonElement> e : ((JsonObject) parsed).entrySet()) {
+      JsonElement value = e.getValue();
+      if (value.isJsonNull()) continue;
+      if (!value.isJsonPrimitive())
+        throw new IllegalArgumentException("Field " + e.getKey() + " must be a string or number");
+      fields.put(e.getKey().toLowerCase(Locale.ROOT), value.getAsString().trim());
+    }
+    return fields;
+  }
+
+  // Splits one CSV record, which may span lines inside quotes. Quoted fields
+  // may contain commas and doubled quotes. Fields are trimmed.
+  static List<String> splitCsv(String text) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (quoted) {
+        if (c != '"') field.append(c);
+        else if (i + 1 < text.length() && text.charAt(i + 1) == '"') field.append(text.charAt(++i));
+        else quoted = false;
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString().trim());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    if (quoted) throw new IllegalArgumentException("Unclosed quote");
+    fields.add(field.toString().trim());
+    return fields;
+  }
+
+  // Reads records, skipping blank lines. A CSV record continues onto the
+  // next line while a quote is open.
+  private static final class RowReader {
+    private final BufferedReader in;
+    private final Format format;
+    private long line;
+
+    RowReader(BufferedReader in, Format format) {
+      this.in = in;
+      this.format = format;
+    }
+
+    Row next() throws IOException {
+      String text;
+      do {
+        text = in.readLine();
+        line++;
+        if (text == null) return null;
+      } while (text.isBlank());
+
+      long start = line;
+      if (format == Format.CSV) {
+        StringBuilder record = null;
+        while (oddQuotes(record != null ? record : text)) {
+          String more = in.readLine();
+          if (more == null) break;  // reported as an unclosed quote
+          line++;
+          if (record == null) record = new StringBuilder(text);
+          record.append('\n').append(more);
+        }
+        if (record != null) text = record.toString();
+      }
+      return new Row(start, text);
+    }
+
+    // Whether the record so far ends inside quotes. Counting is enough since
+    // "" escapes come in pairs.
+    private static boolean oddQuotes(CharSequence all) {
+      int quotes = 0;
+      for (int i = 0; i < all.length(); i++) {
+        if (all.charAt(i) == '"') quotes++;
+      }
+      return quotes % 2 == 1;
+    }
+  }
+}
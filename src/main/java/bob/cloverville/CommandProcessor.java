@@ -0,0 +1,206 @@
+package bob.cloverville;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Single writer for service mutations. Callers on any thread submit commands
+// into a bounded ring buffer; one "cloverville-commands" thread applies them
+// in submission order, a batch at a time, and flushes the write-behind queue
+// once per batch before completing the batch's futures. A completed future
+// therefore means the change is on disk, and a burst of commands costs one
+// round of file writes rather than one per command.
+//
+// Submitting never takes a lock: a producer claims a slot with one CAS on the
+// tail and publishes it through the slot's sequence number. When the buffer
+// is full, producers wait for the consumer to free a slot.
+public final class CommandProcessor {
+
+  private static final int MAX_BATCH = 256;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  private static final class Command<T> {
+    final Supplier<T> task;
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    T value;
+    Throwable error;
+
+    Command(Supplier<T> task) {
+      this.task = task;
+    }
+
+    void apply() {
+      try {
+        value = task.get();
+      } catch (Throwable e) {
+        error = e;
+      }
+    }
+
+    // The batch was not written: fail the command unless it already failed.
+    void fail(Throwable cause) {
+      if (error == null) error = cause;
+    }
+
+    void finish() {
+      if (error != null) result.completeExceptionally(error);
+      else result.complete(value);
+    }
+  }
+
+  private final WriteBehindQueue writeQueue;
+  private final int mask;
+  private final AtomicReferenceArray<Command<?>> slots;
+  // A slot is free for the producer claiming position p when its sequence is
+  // p, and holds a published command for the consumer at p when it is p + 1.
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private long head; // consumer thread only
+
+  private final Thread consumer;
+  private volatile boolean idle;
+  private volatile boolean stopping;
+
+  // capacity is rounded up to a power of two.
+  public CommandProcessor(WriteBehindQueue writeQueue, int capacity) {
+    if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive.");
+
+    int size = Integer.highestOneBit(capacity - 1) << 1;
+    if (size == 0) size = 1;
+
+    this.writeQueue = writeQueue;
+    this.mask = size - 1;
+    this.slots = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) sequences.set(i, i);
+
+    this.consumer = new Thread(this::consume, "cloverville-commands");
+    this.consumer.setDaemon(true);
+    this.consumer.start();
+  }
+
+  // ========================================================================
+  // PRODUCERS
+  // ========================================================================
+  // Queues a command. The future completes with the task's result, or with
+  // the exception it threw, once the batch it ran in has been written.
+  public <T> CompletableFuture<T> submit(Supplier<T> task) {
+    Command<T> command = new Command<>(task);
+    if (stopping) {
+      command.result.completeExceptionally(new RejectedExecutionException("Command processor is shut down."));
+      return command.result;
+    }
+
+    int spins = 0;
+    while (true) {
+      long position = tail.get();
+      int index = (int) position & mask;
+      long sequence = sequences.get(index);
+
+      if (sequence == position) {
+        if (tail.compareAndSet(position, position + 1)) {
+          slots.set(index, command);
+          sequences.set(index, position + 1);
+          if (idle) LockSupport.unpark(consumer);
+          return command.result;
+        }
+      } else if (sequence < position) {
+        // Full: wait for the consumer to free this slot.
+        if (stopping && !consumer.isAlive()) {
+          command.result.completeExceptionally(new RejectedExecutionException("Command processor is shut down."));
+          return command.result;
+        }
+        LockSupport.unpark(consumer);
+        if (++spins < 100) Thread.onSpinWait();
+        else LockSupport.parkNanos(10_000);
+      }
+    }
+  }
+
+  public CompletableFuture<Void> submit(Runnable task) {
+    return submit(() -> {
+      task.run();
+      return null;
+    });
+  }
+
+  // ========================================================================
+  // CONSUMER
+  // ========================================================================
+  private void consume() {
+    List<Command<?>> batch = new ArrayList<>(MAX_BATCH);
+    while (true) {
+      drainTo(batch);
+
+      if (batch.isEmpty()) {
+        if (stopping) return;
+        idle = true;
+        drainTo(batch); // a producer may have published before seeing idle
+        if (batch.isEmpty()) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        idle = false;
+        continue;
+      }
+      try {
+        runBatch(batch);
+      } catch (RuntimeException e) {
+        e.printStackTrace();  // the futures are completed; keep consuming
+      }
+    }
+  }
+
+  // Applies the whole batch, writes it once, then lets the callers go. If
+  // the write fails every command in the batch fails with that error, since
+  // none of them is on disk.
+  private void runBatch(List<Command<?>> batch) {
+    try {
+      for (Command<?> command : batch) command.apply();
+      try {
+        writeQueue.flushAll();
+      } catch (RuntimeException e) {
+        for (Command<?> command : batch) command.fail(e);
+      }
+    } finally {
+      for (Command<?> command : batch) command.finish();
+      batch.clear();
+    }
+  }
+
+  private void drainTo(List<Command<?>> batch) {
+    while (batch.size() < MAX_BATCH) {
+      int index = (int) head & mask;
+      if (sequences.get(index) != head + 1) return;
+
+      batch.add(slots.get(index));
+      slots.set(index, null);
+      sequences.set(index, head + mask + 1);
+      head++;
+    }
+  }
+
+  // ========================================================================
+  // SHUTDOWN
+  // ========================================================================
+  // Rejects new commands, runs the ones already queued and waits for them.
+  public void shutdown() {
+    stopping = true;
+    LockSupport.unpark(consumer);
+    try {
+      consumer.join(TimeUnit.SECONDS.toMillis(10));
+      // Pick up anything published between the consumer's last look and its
+      // exit. Safe: there is still only one consumer.
+      if (!consumer.isAlive()) {
+        List<Command<?>> rest = new ArrayList<>();
+        for (drainTo(rest); !rest.isEmpty(); drainTo(rest)) runBatch(rest);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
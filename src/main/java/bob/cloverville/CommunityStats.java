@@ -0,0 +1,281 @@
+package bob.cloverville;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+
+// Running totals for the dashboard and the website, kept up to date from the
+// services' change events so that reading them never scans a store. Every
+// event costs O(1).
+//
+// Activity counts (by type, open or completed) describe what is stored now.
+// Weekly figures count what happened in each calendar week, Monday to
+// Sunday: greens logged, tasks completed, points earned and spent, and each
+// member's earnings. Completions are dated by the activity and points by
+// their ledger entry, so subscribing replays them into the right weeks;
+// trades are removed once completed, so those finished before startup are
+// not in the replay. The newest WEEKS_KEPT weeks are kept.
+//
+// The totals are also written to website/json/stats.json by the
+// WriteBehindQueue, at most once per write delay.
+//
+// Thread-safe: every method synchronizes on the stats.
+public final class CommunityStats implements ActivityListener, PointsListener {
+
+  private static final int WEEKS_KEPT = 12;
+
+  // Snapshot of one week, for readers.
+  public record WeekStats(
+      LocalDate start,
+      int greensLogged,
+      int communityPoints,
+      Map<ActivityType, Integer> completed,
+      int pointsEarned,
+      int pointsSpent) {}
+
+  // What stats.json holds.
+  public record Snapshot(
+      Instant at,
+      int members,
+      long memberPoints,
+      Map<ActivityType, Integer> open,
+      Map<ActivityType, Integer> completed,
+      List<WeekStats> weeks) {}
+
+  private static final class Week {
+    final LocalDate start;
+    int greensLogged;
+    int communityPoints;
+    final int[] completed = new int[ActivityType.values().length];
+    int pointsEarned;
+    int pointsSpent;
+    final Map<UUID, Integer> earnedByMember = new HashMap<>();
+
+    Week(LocalDate start) {
+      this.start = start;
+    }
+
+    WeekStats stats() {
+      return new WeekStats(start, greensLogged, communityPoints, byType(completed), pointsEarned, pointsSpent);
+    }
+  }
+
+  // What each activity was counted under, to undo when it changes.
+  private record Filed(ActivityType type, boolean completed) {
+    static Filed of(Activity a) {
+      return new Filed(a.getType(), a.getCompletedAt() != null);
+    }
+  }
+
+  private final JsonStorage<Snapshot> storage;
+  private final WriteBehindQueue writeQueue;
+
+  private final Map<UUID, Filed> filed = new HashMap<>();
+  private final int[] open = new int[ActivityType.values().length];
+  private final int[] completed = new int[ActivityType.values().length];
+
+  private final Map<UUID, Integer> balances = new HashMap<>();
+  private long memberPoints;
+
+  private final NavigableMap<LocalDate, Week> weeks = new TreeMap<>();
+
+  private boolean scheduled;
+
+  public CommunityStats(JsonStorage<Snapshot> storage, WriteBehindQueue writeQueue) {
+    this.storage = storage;
+    this.writeQueue = writeQueue;
+    writeQueue.attach(this::publish);
+  }
+
+  // Subscribes to both services, replaying what they hold and the ledger
+  // entries for the weeks kept.
+  public void attach(ActivityService activities, MemberService members) {
+    activities.subscribe(this);
+    members.subscribe(this, weekOf(LocalDate.now()).minusWeeks(WEEKS_KEPT - 1));
+  }
+
+  // ========================================================================
+  // ACTIVITY EVENTS
+  // ========================================================================
+  @Override
+  public synchronized void saved(Activity a) {
+    Filed now = Filed.of(a);
+    Filed old = filed.put(a.getId(), now);
+    if (old != null) count(old, -1);
+    count(now, 1);
+
+    if (a.getType() == ActivityType.GREEN) {
+      // Logging a green is its completion; edits are not counted again.
+      Week week = old == null ? week(a.getCreatedAt()) : null;
+      if (week != null) {
+        week.greensLogged++;
+        week.communityPoints += a.getPointValue();
+      }
+    } else if (now.completed() && (old == null || !old.completed())) {
+      Week week = week(a.getCompletedAt());
+      if (week != null) week.completed[a.getType().ordinal()]++;
+    }
+    changed();
+  }
+
+  @Override
+  public synchronized void removed(Activity a) {
+    Filed old = filed.remove(a.getId());
+    if (old != null) count(old, -1);
+    changed();
+  }
+
+  private void count(Filed f, int by) {
+    (f.completed() ? completed : open)[f.type().ordinal()] += by;
+  }
+
+  // ========================================================================
+  // POINTS EVENTS
+  // ========================================================================
+  @Override
+  public synchronized void recorded(List<PointsLedger.Entry> entries) {
+    for (PointsLedger.Entry e : entries) {
+      Integer old = e.reason() == PointsLedger.Reason.REMOVED
+          ? balances.remove(e.member())
+          : balances.put(e.member(), e.balance());
+      memberPoints += (e.reason() == PointsLedger.Reason.REMOVED ? 0 : e.balance()) - (old != null ? old : 0);
+
+      Week week = week(e.date());
+      if (week == null) continue;
+      if (isEarned(e)) {
+        week.pointsEarned += e.delta();
+        week.earnedByMember.merge(e.member(), e.delta(), Integer::sum);
+      } else if (e.reason() == PointsLedger.Reason.TRADE && e.delta() < 0) {
+        week.pointsSpent -= e.delta();
+      }
+    }
+    changed();
+  }
+
+  @Override
+  public synchronized void balances(Map<UUID, Integer> current) {
+    balances.clear();
+    balances.putAll(current);
+    memberPoints = 0;
+    for (int points : current.values()) memberPoints += points;
+    changed();
+  }
+
+  // Points a member gained by taking part, not by edits or resets.
+  private static boolean isEarned(PointsLedger.Entry e) {
+    return e.delta() > 0 && switch (e.reason()) {
+      case TRADE, COMMUNAL, WEEKLY_BONUS -> true;
+      default -> false;
+    };
+  }
+
+  // ========================================================================
+  // WEEKS
+  // ========================================================================
+  private static LocalDate weekOf(LocalDate day) {
+    return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+  }
+
+  // The bucket for the week holding day, or null if that week is older than
+  // the ones kept.
+  private Week week(LocalDate day) {
+    if (day == null) return null;
+    LocalDate start = weekOf(day);
+
+    Week week = weeks.get(start);
+    if (week != null) return week;
+    if (weeks.size() >= WEEKS_KEPT && start.isBefore(weeks.firstKey())) return null;
+
+    week = new Week(start);
+    weeks.put(start, week);
+    while (weeks.size() > WEEKS_KEPT) weeks.pollFirstEntry();
+    return week;
+  }
+
+  // ========================================================================
+  // QUERIES
+  // ========================================================================
+  public synchronized int getOpenCount(ActivityType type) {
+    return open[type.ordinal()];
+  }
+
+  public synchronized int getCompletedCount(ActivityType type) {
+    return completed[type.ordinal()];
+  }
+
+  public synchronized int getActivityCount(ActivityType type) {
+    return open[type.ordinal()] + completed[type.ordinal()];
+  }
+
+  public synchronized int getMemberCount() {
+    return balances.size();
+  }
+
+  // Sum of every member's personal points.
+  public synchronized long getMemberPoints() {
+    return memberPoints;
+  }
+
+  // The week holding the given day; all zeros if nothing happened in it.
+  public synchronized WeekStats getWeek(LocalDate day) {
+    Week week = weeks.get(weekOf(day));
+    return week != null ? week.stats() : new Week(weekOf(day)).stats();
+  }
+
+  // Weeks kept that had any activity, oldest first.
+  public synchronized List<WeekStats> getWeeks() {
+    List<WeekStats> result = new ArrayList<>(weeks.size());
+    for (Week week : weeks.values()) result.add(week.stats());
+    return result;
+  }
+
+  // Points the member earned from trades, communal tasks and the weekly
+  // bonus in the week holding the given day.
+  public synchronized int getEarnedInWeek(UUID member, LocalDate day) {
+    Week week = weeks.get(weekOf(day));
+    return week != null ? week.earnedByMember.getOrDefault(member, 0) : 0;
+  }
+
+  public int getEarnedThisWeek(UUID member) {
+    return getEarnedInWeek(member, LocalDate.now());
+  }
+
+  public synchronized Snapshot snapshot() {
+    return new Snapshot(Instant.now(), balances.size(), memberPoints, byType(open), byType(completed), getWeeks());
+  }
+
+  private static Map<ActivityType, Integer> byType(int[] counts) {
+    Map<ActivityType, Integer> result = new EnumMap<>(ActivityType.class);
+    for (ActivityType type : ActivityType.values()) result.put(type, counts[type.ordinal()]);
+    return result;
+  }
+
+  // ========================================================================
+  // PUBLISHING (writer thread)
+  // ========================================================================
+  private void changed() {
+    if (!scheduled) {
+      scheduled = true;
+      writeQueue.schedule(this::publish);
+    }
+  }
+
+  private void publish() {
+    Snapshot snapshot;
+    synchronized (this) {
+      if (!scheduled) return;
+      scheduled = false;
+      snapshot = snapshot();
+    }
+    try {
+      storage.saveSingle(snapshot);
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        changed();  // try again after the write delay
+      }
+      throw e;
+    }
+  }
+}
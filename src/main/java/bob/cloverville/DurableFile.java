@@ -0,0 +1,243 @@
+package bob.cloverville;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Crash-safe file writes. A new version is written to <file>.tmp, synced,
+// and renamed over the target, so readers see either the old or the new
+// content. The previous version is kept as <file>.prev, and <file>.crc holds
+// a checksum so a damaged file can be detected and skipped on load.
+//
+// Syncs are group-committed: threads that sync at the same time share one
+// round of fsyncs instead of each waiting for its own.
+public final class DurableFile {
+
+  private static final String TMP = ".tmp";
+  private static final String PREV = ".prev";
+  private static final String CRC = ".crc";
+
+  private DurableFile() {}
+
+  // ========================================================================
+  // WRITE
+  // ========================================================================
+  public static void write(Path target, byte[] content) throws IOException {
+    Path tmp = sibling(target, TMP);
+    Path prev = sibling(target, PREV);
+
+    // 1. New content, durable under a temporary name.
+    try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      writeFully(ch, content);
+      sync(ch);
+    }
+
+    // 2. Keep the current generation (and its checksum) as the fallback.
+    if (Files.exists(target)) {
+      Files.deleteIfExists(prev);
+      try {
+        Files.createLink(prev, target);
+      } catch (IOException | UnsupportedOperationException e) {
+        Files.copy(target, prev, StandardCopyOption.REPLACE_EXISTING);
+      }
+      Path crc = sibling(target, CRC);
+      if (Files.exists(crc))
+        Files.move(crc, sibling(prev, CRC), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // 3. Checksum first: if we crash before the rename, the old file fails
+    //    the check and load falls back to .prev, which is the same content.
+    writeChecksum(target, content);
+
+    // 4. Swap in the new generation.
+    move(tmp, target);
+    syncDirectory(target);
+  }
+
+  // Appends to a file and syncs it as part of the current commit group.
+  public static void append(Path target, byte[] content) throws IOException {
+    try (FileChannel ch = FileChannel.open(target, StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
+      writeFully(ch, content);
+      sync(ch);
+    }
+  }
+
+  // ========================================================================
+  // READ
+  // ========================================================================
+  // Current content if it passes its checksum, otherwise null.
+  public static byte[] read(Path target) {
+    return readVerified(target);
+  }
+
+  // Content of the generation before the current one, if it is intact.
+  public static byte[] readPrevious(Path target) {
+    return readVerified(sibling(target, PREV));
+  }
+
+  // True if the file has a recorded checksum and content matches it. For
+  // callers that read the file themselves, e.g. into a buffer.
+  public static boolean verify(Path file, ByteBuffer content) {
+    Path crc = sibling(file, CRC);
+    try {
+      if (!Files.exists(crc)) return false;
+      String expected = Files.readString(crc, StandardCharsets.UTF_8).trim();
+      if (expected.equals(checksum(content.duplicate()))) return true;
+      System.err.println("Checksum mismatch in " + file + ", ignoring it.");
+      return false;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+  private static byte[] readVerified(Path file) {
+    if (!Files.exists(file)) return null;
+
+    try {
+      byte[] content = Files.readAllBytes(file);
+      Path crc = sibling(file, CRC);
+
+      // Files written before checksums existed are trusted as-is.
+      if (!Files.exists(crc)) return content;
+
+      String expected = Files.readString(crc, StandardCharsets.UTF_8).trim();
+      if (!expected.equals(checksum(content))) {
+        System.err.println("Checksum mismatch in " + file + ", ignoring this generation.");
+        return null;
+      }
+      return content;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  // ========================================================================
+  // CHECKSUM
+  // ========================================================================
+  private static String checksum(byte[] content) {
+    return checksum(ByteBuffer.wrap(content));
+  }
+
+  private static String checksum(ByteBuffer content) {
+    int length = content.remaining();
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    return Long.toHexString(crc.getValue()) + " " + length;
+  }
+
+  private static void writeChecksum(Path target, byte[] content) throws IOException {
+    Path crc = sibling(target, CRC);
+    Path tmp = sibling(crc, TMP);
+    try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      writeFully(ch, checksum(content).getBytes(StandardCharsets.UTF_8));
+      sync(ch);
+    }
+    move(tmp, crc);
+  }
+
+  // ========================================================================
+  // GROUP COMMIT
+  // ========================================================================
+  private static final Object commitLock = new Object();
+  private static List<FileChannel> pending = new ArrayList<>();
+  private static long nextRound = 1;     // round new requests join
+  private static long finishedRound = 0; // last round whose syncs completed
+  private static boolean syncing;
+  private static IOException lastFailure;
+  private static long lastFailureRound;
+
+  // Blocks until the channel's data is on disk. Whoever arrives while no
+  // sync is running leads the round and forces every channel queued so far.
+  private static void sync(FileChannel ch) throws IOException {
+    long myRound;
+    List<FileChannel> batch = null;
+
+    synchronized (commitLock) {
+      pending.add(ch);
+      myRound = nextRound;
+
+      while (finishedRound < myRound) {
+        if (!syncing) {
+          syncing = true;
+          batch = pending;
+          pending = new ArrayList<>();
+          nextRound++;
+          break;
+        }
+        try {
+          commitLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting for sync.", e);
+        }
+      }
+    }
+
+    if (batch != null) {
+      IOException failure = null;
+      for (FileChannel c : batch) {
+        try {
+          c.force(true);
+        } catch (IOException e) {
+          failure = e;
+        }
+      }
+
+      synchronized (commitLock) {
+        finishedRound = myRound;
+        if (failure != null) {
+          lastFailure = failure;
+          lastFailureRound = myRound;
+        }
+        syncing = false;
+        commitLock.notifyAll();
+      }
+    }
+
+    synchronized (commitLock) {
+      if (lastFailureRound == myRound && lastFailure != null)
+        throw new IOException("Sync failed.", lastFailure);
+    }
+  }
+
+  // ========================================================================
+  // HELPERS
+  // ========================================================================
+  private static Path sibling(Path file, String suffix) {
+    return file.resolveSibling(file.getFileName() + suffix);
+  }
+
+  private static void writeFully(FileChannel ch, byte[] content) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(content);
+    while (buffer.hasRemaining()) ch.write(buffer);
+  }
+
+  private static void move(Path from, Path to) throws IOException {
+    try {
+      Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  // Makes the rename itself durable. Not supported on every platform.
+  private static void syncDirectory(Path file) {
+    Path dir = file.toAbsolutePath().getParent();
+    if (dir == null) return;
+    try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+      ch.force(true);
+    } catch (IOException e) {
+      // Windows cannot open directories; the rename is still atomic there.
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package bob.cloverville;
+
+import java.time.LocalDate;
+import java.util.*;
+
+// Ids ordered by the date they fall due, so the scheduler only looks at what
+// is due instead of scanning every activity. Rescheduling or cancelling an id
+// leaves its old entry in the heap; stale entries are skipped when polled and
+// dropped in bulk once they outnumber the live ones.
+public class ExpiryQueue {
+
+  private record Entry(LocalDate due, UUID id, long seq) {}
+
+  private final PriorityQueue<Entry> heap = new PriorityQueue<>(
+      Comparator.comparing(Entry::due).thenComparingLong(Entry::seq));
+  private final Map<UUID, Entry> live = new HashMap<>();
+  private long nextSeq;
+
+  // Schedules id for the given date, replacing any earlier schedule. A null
+  // date cancels it.
+  public void schedule(UUID id, LocalDate due) {
+    if (due == null) {
+      cancel(id);
+      return;
+    }
+
+    Entry current = live.get(id);
+    if (current != null && current.due().equals(due)) return;
+
+    Entry entry = new Entry(due, id, nextSeq++);
+    live.put(id, entry);
+    heap.add(entry);
+    compactIfStale();
+  }
+
+  public void cancel(UUID id) {
+    if (live.remove(id) != null) compactIfStale();
+  }
+
+  // Removes and returns every id due on or before the given date, earliest first.
+  public List<UUID> pollDue(LocalDate date) {
+    List<UUID> due = new ArrayList<>();
+    while (!heap.isEmpty() && !heap.peek().due().isAfter(date)) {
+      Entry entry = heap.poll();
+      if (live.get(entry.id()) == entry) {
+        live.remove(entry.id());
+        due.add(entry.id());
+      }
+    }
+    return due;
+  }
+
+  public int size() {
+    return live.size();
+  }
+
+  private void compactIfStale() {
+    if (heap.size() > 64 && heap.size() > 2 * live.size()) {
+      heap.clear();
+      heap.addAll(live.values());
+    }
+  }
+}
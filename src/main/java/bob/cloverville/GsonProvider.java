@@ -2,11 +2,13 @@ package bob.cloverville;
 
 import com.google.gson.*;
 import java.lang.reflect.Type;
+import java.time.Instant;
 import java.time.LocalDate;
 
 public class GsonProvider {
 
-  private static final Gson gson = new GsonBuilder()
+  // Single-line variant for line-oriented files such as storage journals.
+  private static final Gson compactGson = new GsonBuilder()
 
       // --- LocalDate support ---
       .registerTypeAdapter(LocalDate.class, new JsonDeserializer<LocalDate>() {
@@ -22,6 +24,20 @@ public class GsonProvider {
         }
       })
 
+      // --- Instant support (ISO-8601, UTC) ---
+      .registerTypeAdapter(Instant.class, new JsonDeserializer<Instant>() {
+        @Override
+        public Instant deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext ctx) {
+          return Instant.parse(json.getAsString());
+        }
+      })
+      .registerTypeAdapter(Instant.class, new JsonSerializer<Instant>() {
+        @Override
+        public JsonElement serialize(Instant src, Type typeOfSrc, JsonSerializationContext ctx) {
+          return new JsonPrimitive(src.toString());
+        }
+      })
+
       // --- Enum support (optional but recommended) ---
       .registerTypeAdapter(ActivityType.class, new JsonDeserializer<ActivityType>() {
         @Override
@@ -36,11 +52,18 @@ public class GsonProvider {
         }
       })
 
-      .setPrettyPrinting()
       .serializeNulls()
       .create();
 
+  private static final Gson gson = compactGson.newBuilder()
+      .setPrettyPrinting()
+      .create();
+
   public static Gson get() {
     return gson;
   }
+
+  public static Gson compact() {
+    return compactGson;
+  }
 }
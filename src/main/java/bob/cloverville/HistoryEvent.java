@@ -0,0 +1,60 @@
+package bob.cloverville;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.function.Function;
+
+// One entry in the activity history. Fields are copied from the activity when
+// the event happens, so later edits (a communal rollover clearing the
+// performer, say) do not change what was recorded. The text line in the
+// history file is rendered from these fields.
+public record HistoryEvent(
+    Kind kind,
+    Instant at,
+    UUID activityId,
+    ActivityType type,
+    String title,
+    UUID performerId,
+    UUID receiverId,
+    int points,
+    LocalDate createdAt) {
+
+  public enum Kind { COMPLETED, EXPIRED }
+
+  // A green action logged, or a trade or communal task completed.
+  public static HistoryEvent completed(Activity a) {
+    return of(Kind.COMPLETED, a);
+  }
+
+  public static HistoryEvent expired(Activity a) {
+    return of(Kind.EXPIRED, a);
+  }
+
+  private static HistoryEvent of(Kind kind, Activity a) {
+    return new HistoryEvent(
+        kind,
+        Instant.now(),
+        a.getId(),
+        a.getType(),
+        a.getTitle(),
+        a.getPerformerID(),
+        a.getReceiverID(),
+        a.getPointValue(),
+        a.getCreatedAt());
+  }
+
+  // "[2025-12-07] TRADE_TASK | Title | Alice → Bob | 9 points", prefixed with
+  // "EXPIRED " for expiries. names maps a member id (possibly null) to a name.
+  public String render(Function<UUID, String> names) {
+    StringBuilder line = new StringBuilder(96);
+    if (kind == Kind.EXPIRED) line.append("EXPIRED ");
+    return line.append('[').append(createdAt).append("] ")
+        .append(type).append(" | ")
+        .append(title).append(" | ")
+        .append(names.apply(performerId)).append(" → ")
+        .append(names.apply(receiverId)).append(" | ")
+        .append(points).append(" points")
+        .toString();
+  }
+}
@@ -0,0 +1,469 @@
+package bob.cloverville;
+
+import com.google.gson.JsonParseException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// The activity history on disk: a directory of JSON-lines segments, one or
+// more per month ("history-2026-10.0.jsonl", then ".1" once the first passes
+// maxSegmentBytes). Each segment has a sparse index (".idx") with one entry
+// per block of BLOCK_EVENTS events: where the block starts, how long it is,
+// the date range it covers and the members it mentions. Queries use the
+// indexes to pick segments and blocks and only read those.
+//
+// Segments other than the one being written are sealed; with compressSealed
+// they are gzipped. Block offsets always refer to the uncompressed bytes.
+//
+// append() and flush() are called from a single writer thread (the
+// HistoryWriter's); queries may run on any thread.
+public class HistoryLog {
+
+  static final int BLOCK_EVENTS = 256;
+
+  private static final Pattern SEGMENT_NAME =
+      Pattern.compile("history-(\\d{4}-\\d{2})\\.(\\d+)\\.jsonl(\\.gz)?");
+  private static final ZoneId ZONE = ZoneId.systemDefault();
+
+  // -------- Index (persisted as JSON next to the segment) --------
+  private static final class Block {
+    long offset;
+    long length;
+    LocalDate from;
+    LocalDate to;
+    Set<UUID> members = new HashSet<>();
+    int events;
+
+    boolean overlaps(LocalDate start, LocalDate end) {
+      return !to.isBefore(start) && !from.isAfter(end);
+    }
+  }
+
+  // Only size and blocks go into the index file; the rest comes from the
+  // segment's file name.
+  private static final class Segment {
+    long size;  // uncompressed bytes on disk
+    List<Block> blocks = new ArrayList<>();
+
+    transient Path dir;
+    transient YearMonth month;
+    transient int part;
+    transient boolean compressed;
+
+    String baseName() {
+      return "history-" + month + "." + part;
+    }
+
+    Path dataFile() {
+      return dir.resolve(baseName() + (compressed ? ".jsonl.gz" : ".jsonl"));
+    }
+
+    Path indexFile() {
+      return dir.resolve(baseName() + ".idx");
+    }
+  }
+
+  // A block chosen for reading, fixed at the time of the query.
+  private record Range(long offset, long length) {}
+
+  private final Path dir;
+  private final long maxSegmentBytes;
+  private final boolean compressSealed;
+
+  // Guarded by "this". The last segment is the active one.
+  private final List<Segment> segments = new ArrayList<>();
+
+  // Writer thread only.
+  private FileChannel channel;
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+  public HistoryLog(Path dir, long maxSegmentBytes, boolean compressSealed) {
+    this.dir = dir;
+    this.maxSegmentBytes = maxSegmentBytes;
+    this.compressSealed = compressSealed;
+
+    try {
+      Files.createDirectories(dir);
+      loadSegments();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to open history in " + dir, e);
+    }
+  }
+
+  // ========================================================================
+  // WRITING (writer thread)
+  // ========================================================================
+  // Buffers one rendered line for the event. Nothing reaches the file until
+  // flush(); a line never spans two segments.
+  public synchronized void append(HistoryEvent event, byte[] line) {
+    LocalDate date = dateOf(event);
+    Segment active = active();
+
+    long end = active != null ? active.size + pending.size() : 0;
+
+    if (active == null
+        || active.compressed  // sealed in an earlier run
+        || !active.month.equals(YearMonth.from(date))
+        || (end > 0 && end + line.length > maxSegmentBytes)) {
+      flush();
+      active = startSegment(YearMonth.from(date));
+      end = 0;
+    }
+
+    indexLine(active, date, event, end, line.length);
+    pending.write(line, 0, line.length);
+  }
+
+  public synchronized int bufferedBytes() {
+    return pending.size();
+  }
+
+  // Writes buffered lines to the active segment.
+  public synchronized void flush() {
+    Segment active = active();
+    if (active == null || pending.size() == 0) return;
+
+    try {
+      if (channel == null) {
+        channel = FileChannel.open(active.dataFile(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      }
+      ByteBuffer bytes = ByteBuffer.wrap(pending.toByteArray());
+      while (bytes.hasRemaining()) channel.write(bytes);
+      active.size += pending.size();
+    } catch (IOException e) {
+      e.printStackTrace();  // history is best effort; drop what was buffered
+      closeChannel();
+      dropPending(active);
+      cutTo(active);
+    } finally {
+      pending.reset();
+    }
+  }
+
+  // Flushes, writes the active segment's index and closes the file.
+  public synchronized void close() {
+    flush();
+    closeChannel();
+    Segment active = active();
+    if (active != null) writeIndex(active);
+  }
+
+  private Segment active() {
+    return segments.isEmpty() ? null : segments.get(segments.size() - 1);
+  }
+
+  private Segment startSegment(YearMonth month) {
+    Segment previous = active();
+    if (previous != null) seal(previous);
+
+    Segment segment = new Segment();
+    segment.dir = dir;
+    segment.month = month;
+    segment.part = nextPart(month);
+    segments.add(segment);
+    return segment;
+  }
+
+  // One past the highest part of the month so far. That is not always the
+  // previous segment's: an event dated in an earlier month (an import, say)
+  // must not reopen that month's sealed parts.
+  private int nextPart(YearMonth month) {
+    int next = 0;
+    for (Segment segment : segments) {
+      if (segment.month.equals(month)) next = Math.max(next, segment.part + 1);
+    }
+    return next;
+  }
+
+  private void seal(Segment segment) {
+    closeChannel();
+    if (compressSealed && !segment.compressed && segment.size > 0) compress(segment);
+    writeIndex(segment);
+  }
+
+  private void compress(Segment segment) {
+    Path plain = segment.dataFile();
+    Path gz = dir.resolve(segment.baseName() + ".jsonl.gz");
+    Path tmp = dir.resolve(segment.baseName() + ".jsonl.gz.tmp");
+    try {
+      try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        Files.copy(plain, out);
+      }
+      Files.move(tmp, gz, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      segment.compressed = true;
+      Files.delete(plain);
+    } catch (IOException e) {
+      e.printStackTrace();  // keep the plain segment
+    }
+  }
+
+  // Removes anything a failed write left past the segment's size, so later
+  // lines land at the offsets the index gives them. If the file cannot be
+  // cut, the size moves past the leftovers instead; no block points at them.
+  private void cutTo(Segment segment) {
+    Path file = segment.dataFile();
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      if (ch.size() > segment.size) ch.truncate(segment.size);
+    } catch (NoSuchFileException e) {
+      // nothing was written
+    } catch (IOException e) {
+      e.printStackTrace();
+      try {
+        segment.size = Math.max(segment.size, Files.size(file));
+      } catch (IOException again) {
+        again.printStackTrace();
+      }
+    }
+  }
+
+  // Drops the index entries for lines that were buffered but not written.
+  private void dropPending(Segment segment) {
+    long written = segment.size;
+    segment.blocks.removeIf(b -> b.offset >= written);
+    if (!segment.blocks.isEmpty()) {
+      Block last = segment.blocks.get(segment.blocks.size() - 1);
+      last.length = written - last.offset;
+    }
+  }
+
+  private void closeChannel() {
+    if (channel == null) return;
+    try {
+      channel.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    channel = null;
+  }
+
+  // ========================================================================
+  // INDEX FILES
+  // ========================================================================
+  // Indexes can be rebuilt from their segment, so a plain atomic rename is
+  // enough here.
+  private void writeIndex(Segment segment) {
+    Path tmp = dir.resolve(segment.baseName() + ".idx.tmp");
+    try {
+      Files.writeString(tmp, GsonProvider.compact().toJson(segment));
+      Files.move(tmp, segment.indexFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      e.printStackTrace();  // rebuilt from the segment on next start
+    }
+  }
+
+  private void loadSegments() throws IOException {
+    List<Segment> found = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "history-*.jsonl*")) {
+      for (Path file : files) {
+        Matcher m = SEGMENT_NAME.matcher(file.getFileName().toString());
+        if (!m.matches()) continue;
+
+        Segment segment = new Segment();
+        segment.dir = dir;
+        segment.month = YearMonth.parse(m.group(1));
+        segment.part = Integer.parseInt(m.group(2));
+        segment.compressed = m.group(3) != null;
+        found.add(segment);
+      }
+    }
+    found.sort(Comparator.comparing((Segment s) -> s.month).thenComparingInt(s -> s.part));
+
+    for (Segment segment : found) {
+      Segment indexed = readIndex(segment);
+      segments.add(indexed != null ? indexed : rebuildIndex(segment));
+    }
+  }
+
+  // The stored index, or null if it is missing or does not match the file
+  // (the app stopped before writing it).
+  private Segment readIndex(Segment segment) {
+    Path file = segment.indexFile();
+    if (!Files.exists(file)) return null;
+
+    try {
+      Segment indexed = GsonProvider.compact().fromJson(Files.readString(file), Segment.class);
+      if (indexed == null || indexed.blocks == null) return null;
+      if (!segment.compressed && indexed.size != Files.size(segment.dataFile())) return null;
+
+      indexed.dir = dir;
+      indexed.month = segment.month;
+      indexed.part = segment.part;
+      indexed.compressed = segment.compressed;
+      return indexed;
+    } catch (IOException | JsonParseException e) {
+      return null;
+    }
+  }
+
+  private Segment rebuildIndex(Segment segment) throws IOException {
+    Segment rebuilt = new Segment();
+    rebuilt.dir = dir;
+    rebuilt.month = segment.month;
+    rebuilt.part = segment.part;
+    rebuilt.compressed = segment.compressed;
+
+    try (InputStream in = open(segment)) {
+      byte[] data = in.readAllBytes();
+      int start = 0;
+      for (int i = 0; i < data.length; i++) {
+        if (data[i] != '\n') continue;
+        HistoryEvent event = parse(new String(data, start, i - start, StandardCharsets.UTF_8));
+        if (event != null) indexLine(rebuilt, dateOf(event), event, start, i + 1 - start);
+        start = i + 1;
+      }
+      rebuilt.size = start;  // a torn last line is ignored
+    }
+    writeIndex(rebuilt);
+    return rebuilt;
+  }
+
+  private static void indexLine(Segment segment, LocalDate date, HistoryEvent event, long offset, long length) {
+    Block block = segment.blocks.isEmpty() ? null : segment.blocks.get(segment.blocks.size() - 1);
+    if (block == null || block.events >= BLOCK_EVENTS) {
+      block = new Block();
+      block.offset = offset;
+      block.from = date;
+      block.to = date;
+      segment.blocks.add(block);
+    }
+    if (date.isBefore(block.from)) block.from = date;
+    if (date.isAfter(block.to)) block.to = date;
+    if (event.performerId() != null) block.members.add(event.performerId());
+    if (event.receiverId() != null) block.members.add(event.receiverId());
+    block.length = offset + length - block.offset;
+    block.events++;
+  }
+
+  // ========================================================================
+  // QUERIES
+  // ========================================================================
+  // Events on dates from..to (inclusive), in the order they were written.
+  // Only events already flushed are seen. Close the stream when done.
+  public Stream<HistoryEvent> between(LocalDate from, LocalDate to) {
+    return select(from, to, null);
+  }
+
+  // Events naming the member as performer or receiver, optionally limited to
+  // a date range (null bounds are open).
+  public Stream<HistoryEvent> forMember(UUID memberId, LocalDate from, LocalDate to) {
+    Objects.requireNonNull(memberId, "memberId");
+    return select(from, to, memberId);
+  }
+
+  private Stream<HistoryEvent> select(LocalDate from, LocalDate to, UUID memberId) {
+    LocalDate start = from != null ? from : LocalDate.MIN;
+    LocalDate end = to != null ? to : LocalDate.MAX;
+    if (start.isAfter(end)) return Stream.empty();
+
+    // Fix the segments and blocks to read now, so later appends and seals
+    // cannot move them under the reader.
+    Map<Segment, List<Range>> plan = new LinkedHashMap<>();
+    synchronized (this) {
+      for (Segment segment : segments) {
+        if (segment.blocks.isEmpty()) continue;
+        YearMonth month = segment.month;
+        if (month.atEndOfMonth().isBefore(start) || month.atDay(1).isAfter(end)) continue;
+
+        List<Range> ranges = new ArrayList<>();
+        for (Block block : segment.blocks) {
+          if (block.offset >= segment.size) break;  // still buffered
+          if (!block.overlaps(start, end)) continue;
+          if (memberId != null && !block.members.contains(memberId)) continue;
+          ranges.add(new Range(block.offset, Math.min(block.length, segment.size - block.offset)));
+        }
+        if (!ranges.isEmpty()) plan.put(copyOf(segment), ranges);
+      }
+    }
+
+    return plan.entrySet().stream()
+        .flatMap(e -> read(e.getKey(), e.getValue()))
+        .filter(event -> {
+          LocalDate date = dateOf(event);
+          return !date.isBefore(start) && !date.isAfter(end);
+        })
+        .filter(event -> memberId == null
+            || memberId.equals(event.performerId()) || memberId.equals(event.receiverId()));
+  }
+
+  private static Segment copyOf(Segment segment) {
+    Segment copy = new Segment();
+    copy.dir = segment.dir;
+    copy.month = segment.month;
+    copy.part = segment.part;
+    copy.compressed = segment.compressed;
+    copy.size = segment.size;
+    return copy;
+  }
+
+  private Stream<HistoryEvent> read(Segment segment, List<Range> ranges) {
+    InputStream in;
+    try {
+      in = open(segment);
+    } catch (NoSuchFileException e) {
+      // Sealed and compressed since the plan was made.
+      segment.compressed = true;
+      try {
+        in = open(segment);
+      } catch (IOException again) {
+        throw new UncheckedIOException(again);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    InputStream input = in;
+    long[] position = {0};
+    return ranges.stream()
+        .flatMap(range -> {
+          try {
+            input.skipNBytes(range.offset() - position[0]);
+            byte[] bytes = input.readNBytes((int) range.length());
+            position[0] = range.offset() + bytes.length;
+            return new String(bytes, StandardCharsets.UTF_8).lines();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        })
+        .map(HistoryLog::parse)
+        .filter(Objects::nonNull)
+        .onClose(() -> {
+          try {
+            input.close();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  private static InputStream open(Segment segment) throws IOException {
+    InputStream in = new BufferedInputStream(Files.newInputStream(segment.dataFile()), 64 * 1024);
+    return segment.compressed ? new GZIPInputStream(in, 64 * 1024) : in;
+  }
+
+  private static LocalDate dateOf(HistoryEvent event) {
+    return event.at().atZone(ZONE).toLocalDate();
+  }
+
+  static HistoryEvent parse(String line) {
+    if (line.isBlank()) return null;
+    try {
+      HistoryEvent event = GsonProvider.compact().fromJson(line, HistoryEvent.class);
+      return event != null && event.at() != null ? event : null;
+    } catch (JsonParseException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,295 @@
+package bob.cloverville;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Appends history events from a background "cloverville-history" thread.
+// append() only queues the event; the thread renders it (resolving member
+// names there, not on the caller's thread) and hands the line to the
+// HistoryLog, which buffers it. The buffer goes to disk once it holds
+// FLUSH_BYTES, or FLUSH_MILLIS after the oldest unwritten event, whichever
+// comes first.
+//
+// Each line is one JSON object: the event's fields plus "text", the
+// human-readable rendering. Subscribed listeners see each event on the same
+// thread once it is buffered.
+public class HistoryWriter {
+
+  private static final int FLUSH_BYTES = 64 * 1024;
+  private static final long FLUSH_MILLIS = 500;
+
+  // A line of the plain-text history.txt, as written before events were
+  // stored as JSON. The title may contain " | "; names cannot.
+  private static final Pattern TEXT_LINE = Pattern.compile(
+      "^(EXPIRED )?\\[(\\d{4}-\\d{2}-\\d{2})\\] (\\w+) \\| (.*) \\| ([^|]*) → ([^|]*) \\| (-?\\d+) points$");
+
+  // Queue entries: an event to write, a request to write everything queued
+  // before it, a listener to catch up and add, or legacy files to import.
+  private sealed interface Entry permits Event, Flush, Subscribe, Import {}
+  private record Event(HistoryEvent event) implements Entry {}
+  private record Flush(CompletableFuture<Void> done) implements Entry {}
+  private record Subscribe(Consumer<HistoryEvent> listener, Instant after, CompletableFuture<Void> done) implements Entry {}
+  private record Import(List<Path> files, Function<String, UUID> ids) implements Entry {}
+
+  // An imported event and the text to store with it (null to render it).
+  private record Imported(HistoryEvent event, String text) {}
+
+  private final HistoryLog log;
+  private final Function<UUID, String> names;
+  private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+  private final List<Consumer<HistoryEvent>> listeners = new CopyOnWriteArrayList<>();
+  private final Thread thread;
+  private volatile boolean closed;
+
+  // Background thread state.
+  private long oldestUnwrittenNanos;
+
+  // names maps a member id (possibly null) to the name shown in the text.
+  public HistoryWriter(HistoryLog log, Function<UUID, String> names) {
+    this.log = log;
+    this.names = names;
+    this.thread = new Thread(this::run, "cloverville-history");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  // Queues an event. Never blocks and never touches the file.
+  public void append(HistoryEvent event) {
+    if (closed) throw new IllegalStateException("History writer is closed.");
+    queue.add(new Event(event));
+  }
+
+  // Completes once everything appended before this call is on disk.
+  public CompletableFuture<Void> flush() {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    if (closed && !thread.isAlive()) done.complete(null);
+    else queue.add(new Flush(done));
+    return done;
+  }
+
+  // Passes the listener every logged event after the given instant (all of
+  // them if null), then each new event as it is written. Listeners run on
+  // the history thread. Completes once the listener has caught up.
+  public CompletableFuture<Void> subscribe(Consumer<HistoryEvent> listener, Instant after) {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    if (closed) done.completeExceptionally(new IllegalStateException("History writer is closed."));
+    else queue.add(new Subscribe(listener, after, done));
+    return done;
+  }
+
+  // Writes what is queued, closes the file and stops the thread.
+  public void close() {
+    if (closed) return;
+    CompletableFuture<Void> done = flush();
+    closed = true;
+    done.join();
+    thread.interrupt();
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Queues the move of single-file histories (the formats before segments)
+  // into the log; the history thread reads them after everything appended so
+  // far and writes their events in date order. A .txt file holds the
+  // plain-text lines written before events were stored as JSON, and ids maps
+  // the member names in them to ids (null if unknown); other files hold JSON
+  // lines. Each file is deleted once it has been read, or renamed to
+  // <name>.imported if some lines could not be.
+  public void importLegacy(Function<String, UUID> ids, Path... files) {
+    if (closed) throw new IllegalStateException("History writer is closed.");
+    queue.add(new Import(List.of(files), ids));
+  }
+
+  // ========================================================================
+  // QUERIES
+  // ========================================================================
+  // Both see every event appended before the call. Close the stream when done.
+  public Stream<HistoryEvent> between(LocalDate from, LocalDate to) {
+    flush().join();
+    return log.between(from, to);
+  }
+
+  public Stream<HistoryEvent> forMember(UUID memberId, LocalDate from, LocalDate to) {
+    flush().join();
+    return log.forMember(memberId, from, to);
+  }
+
+  // ========================================================================
+  // BACKGROUND THREAD
+  // ========================================================================
+  private void run() {
+    List<Entry> batch = new ArrayList<>();
+    try {
+      while (!closed || !queue.isEmpty()) {
+        Entry first = log.bufferedBytes() == 0
+            ? queue.take()
+            : queue.poll(remainingMillis(), TimeUnit.MILLISECONDS);
+
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch);
+          for (Entry entry : batch) {
+            if (entry instanceof Event e) encode(e.event());
+            else if (entry instanceof Flush f) {
+              log.flush();
+              f.done().complete(null);
+            }
+            else if (entry instanceof Subscribe s) catchUp(s);
+            else if (entry instanceof Import i) importFiles(i);
+          }
+          batch.clear();
+        }
+
+        if (log.bufferedBytes() >= FLUSH_BYTES || remainingMillis() <= 0) log.flush();
+      }
+    } catch (InterruptedException e) {
+      // close(): everything queued has been written
+    } finally {
+      log.close();
+    }
+  }
+
+  private long remainingMillis() {
+    long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldestUnwrittenNanos);
+    return FLUSH_MILLIS - waited;
+  }
+
+  // Everything before the request is in the log once it is flushed.
+  private void catchUp(Subscribe s) {
+    log.flush();
+    LocalDate from = s.after() != null ? s.after().atZone(ZoneId.systemDefault()).toLocalDate() : null;
+    try (Stream<HistoryEvent> past = log.between(from, null)) {
+      past.filter(e -> s.after() == null || e.at().isAfter(s.after())).forEach(s.listener());
+      listeners.add(s.listener());
+      s.done().complete(null);
+    } catch (RuntimeException e) {
+      s.done().completeExceptionally(e);
+    }
+  }
+
+  private void importFiles(Import i) {
+    List<Imported> events = new ArrayList<>();
+    Map<Path, Integer> read = new LinkedHashMap<>();  // file -> lines skipped
+    for (Path file : i.files()) {
+      if (!Files.exists(file)) continue;
+      List<Imported> fromFile = new ArrayList<>();
+      int skipped = readLegacy(file, i.ids(), fromFile);
+      if (skipped < 0) continue;  // unreadable; left in place
+      events.addAll(fromFile);
+      read.put(file, skipped);
+    }
+
+    // Date order (stable for equal times), so the log moves through the
+    // months once rather than starting a segment at every change of month.
+    events.sort(Comparator.comparing(e -> e.event().at()));
+    for (Imported e : events) encode(e.event(), e.text());
+    log.flush();
+
+    read.forEach((file, skipped) -> {
+      try {
+        if (skipped == 0) {
+          Files.delete(file);
+        } else {
+          System.err.println("Skipped " + skipped + " unreadable lines of " + file);
+          Files.move(file, file.resolveSibling(file.getFileName() + ".imported"));
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+  }
+
+  // Adds the file's events to out; returns the number of lines skipped, or
+  // -1 if the file could not be read.
+  private static int readLegacy(Path file, Function<String, UUID> ids, List<Imported> out) {
+    boolean plainText = file.getFileName().toString().endsWith(".txt");
+    int skipped = 0;
+    try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+      for (String line : (Iterable<String>) lines::iterator) {
+        if (line.isBlank()) continue;
+        HistoryEvent event = plainText ? parseText(line, ids) : HistoryLog.parse(line);
+        if (event == null) skipped++;
+        // A plain-text line keeps its own text, names as they were then.
+        else out.add(new Imported(event, plainText ? line.strip() : null));
+      }
+      return skipped;
+    } catch (IOException | UncheckedIOException e) {
+      e.printStackTrace();
+      return -1;
+    }
+  }
+
+  // Null if the line is not in the plain-text format. Only the date is known,
+  // so the event is placed at its start.
+  static HistoryEvent parseText(String line, Function<String, UUID> ids) {
+    Matcher m = TEXT_LINE.matcher(line.strip());
+    if (!m.matches()) return null;
+    try {
+      LocalDate createdAt = LocalDate.parse(m.group(2));
+      return new HistoryEvent(
+          m.group(1) != null ? HistoryEvent.Kind.EXPIRED : HistoryEvent.Kind.COMPLETED,
+          createdAt.atStartOfDay(ZoneId.systemDefault()).toInstant(),
+          null,
+          ActivityType.valueOf(m.group(3)),
+          m.group(4),
+          memberId(m.group(5), ids),
+          memberId(m.group(6), ids),
+          Integer.parseInt(m.group(7)),
+          createdAt);
+    } catch (RuntimeException e) {
+      return null;  // unknown type, bad date or out-of-range points
+    }
+  }
+
+  private static UUID memberId(String name, Function<String, UUID> ids) {
+    String trimmed = name.strip();
+    return trimmed.isEmpty() ? null : ids.apply(trimmed);
+  }
+
+  private void encode(HistoryEvent event) {
+    encode(event, null);
+  }
+
+  // text replaces the rendering if not null.
+  private void encode(HistoryEvent event, String text) {
+    JsonObject json = GsonProvider.compact().toJsonTree(event).getAsJsonObject();
+    json.addProperty("text", text != null ? text : event.render(names));
+    byte[] line = (GsonProvider.compact().toJson(json) + "\n").getBytes(StandardCharsets.UTF_8);
+
+    if (log.bufferedBytes() == 0) oldestUnwrittenNanos = System.nanoTime();
+    log.append(event, line);
+    for (Consumer<HistoryEvent> listener : listeners) {
+      try {
+        listener.accept(event);
+      } catch (RuntimeException e) {
+        e.printStackTrace();  // a broken listener must not stop the history
+      }
+    }
+  }
+}
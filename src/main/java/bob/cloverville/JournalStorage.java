@@ -0,0 +1,215 @@
+package bob.cloverville;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+// Appends one journal line per changed record instead of rewriting the whole
+// JSON file. The JSON file stays the snapshot (the website reads it) and the
+// journal is folded back into it by compact().
+public class JournalStorage<T> extends JsonStorage<T> {
+
+  private static final int DEFAULT_COMPACT_THRESHOLD = 500;
+
+  private final JsonStorage<T> snapshot;
+  private final Class<T> recordType;
+  private final Function<T, UUID> keyOf;
+  private final Path journalPath;
+  private final Gson gson;
+
+  // Current contents as of snapshot + journal, used when compacting.
+  private final Map<UUID, T> records = new LinkedHashMap<>();
+
+  private int journalEntries;
+  private int compactThreshold = DEFAULT_COMPACT_THRESHOLD;
+
+  public JournalStorage(JsonStorage<T> snapshot, Class<T> recordType, Function<T, UUID> keyOf) {
+    super(snapshot);
+    this.snapshot = snapshot;
+    this.recordType = recordType;
+    this.keyOf = keyOf;
+    this.journalPath = Path.of(snapshot.getFilePath() + ".journal");
+    this.gson = GsonProvider.compact();
+  }
+
+  public void setCompactThreshold(int compactThreshold) {
+    if (compactThreshold < 1)
+      throw new IllegalArgumentException("Compact threshold must be at least 1.");
+    this.compactThreshold = compactThreshold;
+  }
+
+  // -------- LOAD --------
+  @Override
+  public List<T> load() {
+    records.clear();
+    for (T item : snapshot.load()) {
+      records.put(keyOf.apply(item), item);
+    }
+
+    journalEntries = replayJournal();
+
+    // Fold leftovers from the last session into the snapshot right away. If
+    // that fails the journal is kept and replayed again next time.
+    if (journalEntries > 0) {
+      try {
+        compact();
+      } catch (UncheckedIOException e) {
+        e.printStackTrace();
+      }
+    }
+
+    return new ArrayList<>(records.values());
+  }
+
+  private int replayJournal() {
+    if (!Files.exists(journalPath)) return 0;
+
+    int replayed = 0;
+    try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isBlank()) continue;
+
+        Entry entry;
+        try {
+          entry = gson.fromJson(line, Entry.class);
+        } catch (RuntimeException e) {
+          // A torn last line from a crash mid-append; everything before it is intact.
+          break;
+        }
+        if (entry == null || entry.id == null || entry.op == null) continue;
+
+        switch (entry.op) {
+          case UPSERT -> records.put(entry.id, gson.fromJson(entry.record, recordType));
+          case DELETE -> records.remove(entry.id);
+        }
+        replayed++;
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return replayed;
+  }
+
+  // -------- FULL SAVE --------
+  @Override
+  public void save(List<T> data) {
+    write(data);
+  }
+
+  // -------- RECORD CHANGES --------
+  @Override
+  public void saveChange(Collection<T> all, T changed) {
+    saveChanges(List.of(changed), List.of());
+  }
+
+  @Override
+  public void saveRemoval(Collection<T> all, T removed) {
+    saveChanges(List.of(), List.of(removed));
+  }
+
+  // Appends a batch of changes with a single write to the journal. Throws
+  // UncheckedIOException if they could not be written.
+  public void saveChanges(Collection<T> changed, Collection<T> removed) {
+    List<Entry> entries = new ArrayList<>(changed.size() + removed.size());
+
+    for (T item : changed) {
+      UUID id = keyOf.apply(item);
+      records.put(id, item);
+      entries.add(new Entry(Op.UPSERT, id, gson.toJsonTree(item, recordType)));
+    }
+    for (T item : removed) {
+      UUID id = keyOf.apply(item);
+      records.remove(id);
+      entries.add(new Entry(Op.DELETE, id, null));
+    }
+
+    if (!entries.isEmpty()) append(entries);
+  }
+
+  public UUID keyOf(T item) {
+    return keyOf.apply(item);
+  }
+
+  private void append(List<Entry> entries) {
+    StringBuilder lines = new StringBuilder();
+    for (Entry entry : entries) {
+      lines.append(gson.toJson(entry)).append('\n');
+    }
+
+    try {
+      DurableFile.append(journalPath, lines.toString().getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      // The changes are not on disk; fall back to a full snapshot so they
+      // aren't lost. If that fails too the caller gets the error.
+      try {
+        compact();
+      } catch (UncheckedIOException again) {
+        again.addSuppressed(e);
+        throw again;
+      }
+      return;
+    }
+
+    journalEntries += entries.size();
+    if (journalEntries >= compactThreshold) {
+      try {
+        compact();
+      } catch (UncheckedIOException e) {
+        e.printStackTrace();  // the changes are in the journal; compaction is retried next append
+      }
+    }
+  }
+
+  // -------- COMPACTION --------
+  // Writes the current records as a fresh snapshot and starts an empty journal.
+  // The journal is only dropped once the snapshot is safely on disk. Throws
+  // UncheckedIOException if either step fails; a journal left behind would be
+  // replayed over the newer snapshot.
+  public void compact() {
+    snapshot.write(new ArrayList<>(records.values()));
+    try {
+      Files.deleteIfExists(journalPath);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to clear " + journalPath, e);
+    }
+    journalEntries = 0;
+  }
+
+  @Override
+  void write(List<T> data) {
+    records.clear();
+    for (T item : data) {
+      records.put(keyOf.apply(item), item);
+    }
+    compact();
+  }
+
+  // -------- JOURNAL ENTRY --------
+  private enum Op { UPSERT, DELETE }
+
+  private static class Entry {
+    private final Op op;
+    private final UUID id;
+    private final JsonElement record;
+
+    private Entry(Op op, UUID id, JsonElement record) {
+      this.op = op;
+      this.id = id;
+      this.record = record;
+    }
+  }
+}
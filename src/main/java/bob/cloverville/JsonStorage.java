@@ -3,12 +3,18 @@ package bob.cloverville;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
 
 public class JsonStorage<T> {
 
@@ -16,45 +22,117 @@ public class JsonStorage<T> {
   private final Gson gson;
   private final Type listType;
 
+  // Set for files stored as a JSON object keyed by record id (members.json).
+  private final Function<T, UUID> keyOf;
+
   public JsonStorage(String filePath, Type listType) {
+    this(filePath, listType, null);
+  }
+
+  private JsonStorage(String filePath, Type listType, Function<T, UUID> keyOf) {
     this.filePath = filePath;
     this.listType = listType;
+    this.keyOf = keyOf;
     this.gson = GsonProvider.get();
   }
 
+  // Used by storages that layer on top of another one and share its file.
+  protected JsonStorage(JsonStorage<T> source) {
+    this(source.filePath, source.listType, source.keyOf);
+  }
+
+  // Storage for a JSON object of { id: record } instead of a plain array.
+  public static <T> JsonStorage<T> keyed(String filePath, Type mapType, Function<T, UUID> keyOf) {
+    return new JsonStorage<>(filePath, mapType, keyOf);
+  }
+
+  public String getFilePath() {
+    return filePath;
+  }
+
   // -------- LIST STORAGE --------
   public List<T> load() {
-    try (FileReader reader = new FileReader(filePath, StandardCharsets.UTF_8)) {
-      List<T> data = gson.fromJson(reader, listType);
+    List<T> data = parseList(DurableFile.read(path()));
+    if (data == null) {
+      // Current file is missing, damaged or unreadable: use the previous generation.
+      data = parseList(DurableFile.readPrevious(path()));
+    }
+    return data != null ? data : new ArrayList<>();
+  }
+
+  private List<T> parseList(byte[] content) {
+    if (content == null) return null;
+    try {
+      String json = new String(content, StandardCharsets.UTF_8);
+      if (keyOf != null) {
+        Map<UUID, T> data = gson.fromJson(json, listType);
+        return data != null ? new ArrayList<>(data.values()) : new ArrayList<>();
+      }
+      List<T> data = gson.fromJson(json, listType);
       return data != null ? data : new ArrayList<>();
     } catch (Exception e) {
-      return new ArrayList<>();
+      e.printStackTrace();
+      return null;
     }
   }
 
+  // Throws UncheckedIOException if the file could not be written.
   public void save(List<T> data) {
-    try (FileWriter writer = new FileWriter(filePath, StandardCharsets.UTF_8)) {
-      gson.toJson(data, writer);
-    } catch (Exception e) {
-      e.printStackTrace();
+    write(data);
+  }
+
+  void write(List<T> data) {
+    if (keyOf != null) {
+      Map<UUID, T> keyed = new LinkedHashMap<>();
+      for (T item : data) keyed.put(keyOf.apply(item), item);
+      writeJson(keyed);
+      return;
     }
+    writeJson(data);
+  }
+
+  private void writeJson(Object value) {
+    byte[] content = gson.toJson(value, listType).getBytes(StandardCharsets.UTF_8);
+    try {
+      DurableFile.write(path(), content);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to write " + filePath, e);
+    }
+  }
+
+  private Path path() {
+    return Path.of(filePath);
+  }
+
+  // -------- RECORD CHANGES --------
+  // A plain JSON file has no record-level format, so a single change rewrites
+  // the whole file. Journal-backed storages override these to append instead.
+  public void saveChange(Collection<T> all, T changed) {
+    save(new ArrayList<>(all));
+  }
+
+  public void saveRemoval(Collection<T> all, T removed) {
+    save(new ArrayList<>(all));
   }
 
   // -------- SINGLE VALUE STORAGE --------
   public T loadSingle() {
-    try (FileReader reader = new FileReader(filePath, StandardCharsets.UTF_8)) {
-      return gson.fromJson(reader, (Type) ((Class<?>) listType));
+    T value = parseSingle(DurableFile.read(path()));
+    return value != null ? value : parseSingle(DurableFile.readPrevious(path()));
+  }
+
+  private T parseSingle(byte[] content) {
+    if (content == null) return null;
+    try {
+      return gson.fromJson(new String(content, StandardCharsets.UTF_8), (Type) ((Class<?>) listType));
     } catch (Exception e) {
+      e.printStackTrace();
       return null;
     }
   }
 
-
+  // Throws UncheckedIOException if the file could not be written.
   public void saveSingle(T value) {
-    try (FileWriter writer = new FileWriter(filePath, StandardCharsets.UTF_8)) {
-      gson.toJson(value, writer);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
+    writeJson(value);
   }
 }
@@ -10,6 +10,7 @@ public class Main extends Application {
   @Override
   public void start(Stage stage) throws Exception {
 
+    // Starts loading the stores; the login screen only waits for accounts.
     AppContext.get();
 
     FXMLLoader loader = new FXMLLoader(getClass().getResource("login.fxml"));
@@ -18,6 +19,11 @@ public class Main extends Application {
     stage.show();
   }
 
+  @Override
+  public void stop() {
+    AppContext.get().shutdown();
+  }
+
   public static void main(String[] args) {
     launch(args);
   }
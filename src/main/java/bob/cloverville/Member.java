@@ -9,6 +9,9 @@ public class Member {
   private int personalPoints;
   private int totalTasksCompleted;
 
+  // Bumped by MemberService on every saved change; not persisted.
+  private transient long version;
+
   public Member(String name, int points, int tasksCompleted) {
     this.id = UUID.randomUUID();
     setName(name);
@@ -16,10 +19,30 @@ public class Member {
     setTotalTasksCompleted(tasksCompleted);
   }
 
+  // Rebuilds a stored member as-is, without validation or a new id.
+  Member(UUID id, String name, int points, int tasksCompleted) {
+    this.id = id;
+    this.name = name;
+    this.personalPoints = points;
+    this.totalTasksCompleted = tasksCompleted;
+  }
+
+  // Detached copy for editing; pass it back to updateMember to save. Take it
+  // with MemberService.copyOf, which holds the lock, so the fields and the
+  // version come from the same saved state.
+  Member copy() {
+    Member copy = new Member(id, name, personalPoints, totalTasksCompleted);
+    copy.version = version;
+    return copy;
+  }
+
   public UUID getId() { return id; }
   public String getName() { return name; }
   public int getPersonalPoints() { return personalPoints; }
   public int getTotalTasksCompleted() { return totalTasksCompleted; }
+  public long getVersion() { return version; }
+
+  void nextVersion() { version++; }
 
   public void setName(String name) {
     if (name == null || name.isBlank())
@@ -0,0 +1,190 @@
+package bob.cloverville;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Name lookups for MemberService: the set of taken names, the next free
+// " (n)" suffix per base name, members in name order, and a word-prefix
+// index for search. Members are renamed in place by the edit dialog, so the
+// name each one was indexed under is remembered and used to undo it.
+//
+// Names are unique for members added through the service, but stored data
+// from before that rule may hold the same name twice. Entries are therefore
+// keyed by name and id, so such members are all listed and removing one
+// leaves the others alone.
+public class MemberNameIndex {
+
+  private static final Pattern SUFFIXED = Pattern.compile("^(.*) \\((\\d+)\\)$");
+
+  // Orders by name, then id for members sharing a name.
+  public record NameKey(String name, UUID id) implements Comparable<NameKey> {
+    @Override
+    public int compareTo(NameKey other) {
+      int byName = name.compareTo(other.name);
+      return byName != 0 ? byName : id.compareTo(other.id);
+    }
+
+    // Position for a page cursor: the id, then the name.
+    public String encode() {
+      return id + ":" + name;
+    }
+
+    public static NameKey decode(String position) {
+      int colon = position.indexOf(':');
+      try {
+        return new NameKey(position.substring(colon + 1), UUID.fromString(position.substring(0, Math.max(colon, 0))));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Invalid page cursor.");
+      }
+    }
+  }
+
+  // Members filed under each name, usually just one.
+  private final Map<String, List<Member>> byName = new HashMap<>();
+  // Published for readers; see PersistentSortedMap.
+  private volatile PersistentSortedMap<NameKey, Member> sorted = PersistentSortedMap.empty();
+  private final NavigableMap<String, Set<UUID>> byWord = new TreeMap<>();
+  private final Map<UUID, NameKey> indexed = new HashMap<>();
+
+  // Every suffix below the counter is taken, so probing starts there.
+  private final Map<String, Integer> nextSuffix = new HashMap<>();
+
+  // ========================================================================
+  // MAINTENANCE
+  // ========================================================================
+  public void add(Member m) {
+    sorted = sorted.put(index(m), m);
+  }
+
+  // Renames each member, in order, to the name uniqueName gives it and adds
+  // it. A large batch rebuilds the name order with one sort rather than a
+  // put per member.
+  public void addAllUnique(List<Member> batch) {
+    boolean rebuild = batch.size() > indexed.size() / 8;
+    for (Member m : batch) {
+      String name = uniqueName(m.getName());
+      if (!name.equals(m.getName())) m.setName(name);
+      if (rebuild) index(m);
+      else add(m);
+    }
+    if (!rebuild) return;
+
+    NameKey[] keys = indexed.values().toArray(new NameKey[0]);
+    Arrays.parallelSort(keys);
+    List<Member> values = new ArrayList<>(keys.length);
+    for (NameKey key : keys) values.add(member(key));
+    sorted = PersistentSortedMap.fromSorted(Arrays.asList(keys), values);
+  }
+
+  // Everything but the name order.
+  private NameKey index(Member m) {
+    NameKey key = new NameKey(m.getName(), m.getId());
+    indexed.put(m.getId(), key);
+    byName.computeIfAbsent(key.name(), n -> new ArrayList<>(1)).add(m);
+    for (String word : ActivityTextIndex.tokenize(key.name())) {
+      byWord.computeIfAbsent(word, w -> new HashSet<>()).add(m.getId());
+    }
+    return key;
+  }
+
+  public void remove(Member m) {
+    NameKey key = indexed.remove(m.getId());
+    if (key == null) return;
+
+    List<Member> sharing = byName.get(key.name());
+    sharing.removeIf(other -> other.getId().equals(m.getId()));
+    if (sharing.isEmpty()) byName.remove(key.name());
+    sorted = sorted.remove(key);
+    for (String word : ActivityTextIndex.tokenize(key.name())) {
+      Set<UUID> ids = byWord.get(word);
+      if (ids == null) continue;
+      ids.remove(m.getId());
+      if (ids.isEmpty()) byWord.remove(word);
+    }
+
+    // A freed suffix becomes the lowest candidate again.
+    Matcher suffixed = SUFFIXED.matcher(key.name());
+    if (suffixed.matches() && sharing.isEmpty()) {
+      int suffix = Integer.parseInt(suffixed.group(2));
+      nextSuffix.computeIfPresent(suffixed.group(1), (base, next) -> Math.min(next, suffix));
+    }
+  }
+
+  // Name the member is currently filed under, or null if not indexed.
+  public String indexedName(UUID id) {
+    NameKey key = indexed.get(id);
+    return key != null ? key.name() : null;
+  }
+
+  // ========================================================================
+  // QUERIES
+  // ========================================================================
+  public boolean contains(String name) {
+    return byName.containsKey(name);
+  }
+
+  // A member with exactly this name (the first filed if several share it),
+  // or null.
+  public Member get(String name) {
+    List<Member> sharing = byName.get(name);
+    return sharing != null ? sharing.get(0) : null;
+  }
+
+  // baseName if free, otherwise "baseName (n)" with the lowest free n.
+  public String uniqueName(String baseName) {
+    if (!byName.containsKey(baseName)) return baseName;
+
+    int suffix = nextSuffix.getOrDefault(baseName, 1);
+    String name = baseName + " (" + suffix + ")";
+    while (byName.containsKey(name)) {
+      name = baseName + " (" + ++suffix + ")";
+    }
+    nextSuffix.put(baseName, suffix + 1);
+    return name;
+  }
+
+  // Read-only snapshot; later changes do not show up in it.
+  public List<Member> inNameOrder() {
+    return sorted.values();
+  }
+
+  // Name-ordered entries after the given key (from the start if null), read
+  // from the current snapshot.
+  public Iterator<Map.Entry<NameKey, Member>> inNameOrderAfter(NameKey after) {
+    return sorted.entriesAfter(after);
+  }
+
+  // Members for which every word of the query starts a word of their name,
+  // ignoring case, in name order.
+  public List<Member> search(String query) {
+    List<String> words = ActivityTextIndex.tokenize(query);
+    if (words.isEmpty()) return inNameOrder();
+
+    Set<UUID> matches = null;
+    for (String word : words) {
+      Set<UUID> ids = new HashSet<>();
+      for (Set<UUID> bucket : byWord.subMap(word, word + Character.MAX_VALUE).values()) {
+        ids.addAll(bucket);
+      }
+      if (matches == null) matches = ids;
+      else matches.retainAll(ids);
+      if (matches.isEmpty()) return List.of();
+    }
+
+    List<NameKey> keys = new ArrayList<>(matches.size());
+    for (UUID id : matches) keys.add(indexed.get(id));
+    Collections.sort(keys);
+
+    List<Member> result = new ArrayList<>(keys.size());
+    for (NameKey key : keys) result.add(member(key));
+    return result;
+  }
+
+  private Member member(NameKey key) {
+    for (Member m : byName.get(key.name())) {
+      if (m.getId().equals(key.id())) return m;
+    }
+    throw new IllegalStateException("Name index is out of step for " + key);
+  }
+}
@@ -1,54 +1,83 @@
 package bob.cloverville;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.lang.reflect.Type;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import java.util.regex.Pattern;
 
+// Thread-safe. A read/write lock guards the members, the name index and the
+// leaderboard; every change holds the write lock, since each one touches
+// those shared structures. Transfers between members check versions under
+// that lock instead of locking the members themselves.
 public class MemberService {
 
-  private final String filePath;
-  private final Gson gson;
+  private final JsonStorage<Member> storage;
+  private final PointsLedger ledger;
   private final Map<UUID, Member> members;
+  private final MemberNameIndex names = new MemberNameIndex();
+  private final PointsLeaderboard leaderboard = new PointsLeaderboard();
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
   private static final int MAX_POINTS = 50;
   private static final int MAX_NAME_LENGTH = 30;
   private static final Pattern VALID_NAME = Pattern.compile("^[a-zA-Z0-9 ]+$");
 
-  public MemberService(String filePath) {
-    this.filePath = filePath;
-    this.gson = new GsonBuilder().setPrettyPrinting().create();
+  // Every change to a member's points is recorded in the ledger.
+  public MemberService(JsonStorage<Member> storage, PointsLedger ledger) {
+    this.storage = storage;
+    this.ledger = ledger;
     this.members = load();
+    ledger.reconcile(members.values());
   }
 
   // ---------------- LOAD ----------------
   private Map<UUID, Member> load() {
-    try (FileReader reader = new FileReader(filePath)) {
-      Type type = new TypeToken<Map<UUID, Member>>() {}.getType();
-      Map<UUID, Member> data = gson.fromJson(reader, type);
-      return (data != null) ? data : new HashMap<>();
-    } catch (IOException e) {
-      return new HashMap<>();
+    Map<UUID, Member> data = new LinkedHashMap<>();
+    for (Member m : storage.load()) {
+      data.put(m.getId(), m);
+      names.add(m);
+      leaderboard.update(m);
+    }
+    return data;
+  }
+
+  // ---------------- LOCKING ----------------
+  private void write(Runnable action) {
+    lock.writeLock().lock();
+    try {
+      action.run();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private <T> T read(Supplier<T> reader) {
+    lock.readLock().lock();
+    try {
+      return reader.get();
+    } finally {
+      lock.readLock().unlock();
     }
   }
 
   // ---------------- SAVE ----------------
   private void save() {
-    try (FileWriter writer = new FileWriter(filePath)) {
-      gson.toJson(members, writer);
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
+    storage.save(new ArrayList<>(members.values()));
+  }
+
+  private void saveChange(Member m) {
+    storage.saveChange(members.values(), m);
   }
 
   // ---------------- VALIDATIONS ----------------
-  private void validateMember(Member m) {
+  // Also run by BulkImporter on every row.
+  static void validateMember(Member m) {
     if (m == null) throw new IllegalArgumentException("Member cannot be null");
     validateName(m.getName());
 
@@ -59,7 +88,7 @@ public class MemberService {
       throw new IllegalArgumentException("Total tasks cannot be negative");
   }
 
-  private void validateName(String name) {
+  static void validateName(String name) {
     if (name == null || name.isBlank())
       throw new IllegalArgumentException("Name cannot be empty");
 
@@ -70,108 +99,332 @@ public class MemberService {
       throw new IllegalArgumentException("Name contains invalid characters");
   }
 
-  private String generateUniqueName(String baseName) {
-    String name = baseName;
-    int suffix = 1;
-
-    Set<String> existing = new HashSet<>();
-    for (Member m : members.values()) {
-      existing.add(m.getName());
-    }
-
-    while (existing.contains(name)) {
-      name = baseName + " (" + suffix++ + ")";
-    }
-
-    return name;
-  }
-
   // ---------------- CRUD ----------------
   public void addMember(Member m) {
     validateMember(m);
-    m.setName(generateUniqueName(m.getName()));
-    members.put(m.getId(), m);
-    save();
+    write(() -> {
+      m.setName(names.uniqueName(m.getName()));
+      members.put(m.getId(), m);
+      names.add(m);
+      leaderboard.update(m);
+      ledger.record(m.getId(), m.getPersonalPoints(), m.getPersonalPoints(), PointsLedger.Cause.of(PointsLedger.Reason.OPENING));
+      saveChange(m);
+    });
+  }
+
+  // Adds every member or, if any is invalid, none. Taken names get the
+  // lowest free " (n)" suffix, names repeated within the batch included.
+  // The opening balances go to the ledger as one batch and the members to
+  // storage in one save.
+  public void addMembers(List<Member> batch) {
+    for (Member m : batch) validateMember(m);
+    write(() -> {
+      Set<UUID> ids = new HashSet<>();
+      for (Member m : batch) {
+        if (members.containsKey(m.getId()) || !ids.add(m.getId()))
+          throw new IllegalArgumentException("Duplicate member id: " + m.getId());
+      }
+
+      names.addAllUnique(batch);
+      List<PointsLedger.Change> changes = new ArrayList<>(batch.size());
+      for (Member m : batch) {
+        members.put(m.getId(), m);
+        changes.add(new PointsLedger.Change(m.getId(), m.getPersonalPoints(), m.getPersonalPoints()));
+      }
+
+      if (batch.size() > members.size() / 8) {
+        leaderboard.rebuild(members.values());
+      } else {
+        for (Member m : batch) leaderboard.update(m);
+      }
+      ledger.recordAll(changes, PointsLedger.Cause.of(PointsLedger.Reason.OPENING));
+      save();
+    });
   }
 
   public void deleteMember(Member m) {
-    if (m == null || !members.containsKey(m.getId()))
-      throw new IllegalArgumentException("Member not found");
+    if (m == null) throw new IllegalArgumentException("Member not found");
+
+    write(() -> {
+      if (!members.containsKey(m.getId()))
+        throw new IllegalArgumentException("Member not found");
 
-    members.remove(m.getId());
-    save();
+      Member removed = members.remove(m.getId());
+      names.remove(m);
+      leaderboard.remove(m.getId());
+      ledger.record(m.getId(), -removed.getPersonalPoints(), 0, PointsLedger.Cause.of(PointsLedger.Reason.REMOVED));
+      storage.saveRemoval(members.values(), m);
+    });
   }
 
   public Member getById(UUID id) {
     if (id == null) throw new IllegalArgumentException("ID cannot be null");
 
-    Member m = members.get(id);
+    Member m = read(() -> members.get(id));
     if (m == null) throw new IllegalArgumentException("Member not found");
 
     return m;
   }
 
+  // Copy of the member for editing, taken under the read lock so it never
+  // pairs fields from before a save with the version from after it.
+  public Member copyOf(UUID id) {
+    if (id == null) throw new IllegalArgumentException("ID cannot be null");
+
+    Member copy = read(() -> {
+      Member m = members.get(id);
+      return m != null ? m.copy() : null;
+    });
+    if (copy == null) throw new IllegalArgumentException("Member not found");
+
+    return copy;
+  }
+
+  // The member with exactly this name, or null.
+  public Member getByName(String name) {
+    return read(() -> names.get(name));
+  }
+
   public List<Member> getAll() {
-    List<Member> list = new ArrayList<>(members.values());
-    list.sort(Comparator.comparing(Member::getName));
-    return list;
+    return names.inNameOrder();
   }
 
+  // Members in name order, pageSize at a time. Pass null as cursor for the
+  // first page, then the previous page's nextCursor.
+  public Page<Member> getPage(String cursor, int pageSize) {
+    Page.checkSize(pageSize);
+
+    String position = Page.decode(cursor, "member");
+    Iterator<Map.Entry<MemberNameIndex.NameKey, Member>> it =
+        names.inNameOrderAfter(position != null ? MemberNameIndex.NameKey.decode(position) : null);
+    List<Member> items = new ArrayList<>(pageSize);
+    MemberNameIndex.NameKey last = null;
+    while (it.hasNext()) {
+      Map.Entry<MemberNameIndex.NameKey, Member> e = it.next();
+      if (items.size() == pageSize) return new Page<>(items, Page.encode("member", last.encode()));
+      items.add(e.getValue());
+      last = e.getKey();
+    }
+    return new Page<>(items, null);
+  }
+
+  // ---------------- LEADERBOARD ----------------
+  // 1 for the member with the most points.
+  public int getRank(UUID id) {
+    return read(() -> leaderboard.rank(id));
+  }
+
+  public List<Member> getTopByPoints(int n) {
+    return read(() -> leaderboard.top(n));
+  }
+
+  // Highest points first.
+  public List<Member> getByPointsBetween(int min, int max) {
+    return read(() -> leaderboard.withPointsBetween(min, max));
+  }
+
+  // Members whose name has a word starting with each word of the query.
+  public List<Member> search(String query) {
+    return read(() -> names.search(query));
+  }
+
+  // Saves changes made to a member. Changes made on a copy() are rejected
+  // with ConcurrentModificationException if the member was saved by someone
+  // else since the copy was taken.
   public void updateMember(Member updated) {
-    if (updated == null)
-      throw new IllegalArgumentException("Member cannot be null");
+    updateMembers(updated);
+  }
+
+  // Saves several members at once: either every one is current and all are
+  // saved, or none is. Point changes go into the ledger as adjustments.
+  public void updateMembers(Member... updated) {
+    updateMembers(PointsLedger.Cause.ADJUSTMENT, updated);
+  }
 
-    Member stored = members.get(updated.getId());
-    if (stored == null)
-      throw new IllegalArgumentException("Member does not exist");
+  // As above, recording point changes under the given cause.
+  public void updateMembers(PointsLedger.Cause cause, Member... updated) {
+    for (Member u : updated) {
+      if (u == null)
+        throw new IllegalArgumentException("Member cannot be null");
+      validateMember(u);
+    }
 
-    validateMember(updated);
+    write(() -> {
+      for (Member u : updated) {
+        Member stored = members.get(u.getId());
+        if (stored == null)
+          throw new IllegalArgumentException("Member does not exist");
+        if (u != stored && u.getVersion() != stored.getVersion())
+          throw new ConcurrentModificationException("Member " + stored.getName() + " was changed by someone else");
+      }
+      for (Member u : updated) {
+        apply(members.get(u.getId()), u, cause);
+      }
+    });
+  }
 
-    // Only generate a new unique name if the name actually changed
-    if (!stored.getName().equals(updated.getName())) {
-      stored.setName(generateUniqueName(updated.getName()));
+  private void apply(Member stored, Member updated, PointsLedger.Cause cause) {
+    // Only generate a new unique name if the name actually changed. Compare
+    // against the name it was indexed under: callers that edit the stored
+    // object in place have already changed stored.getName().
+    if (!updated.getName().equals(names.indexedName(stored.getId()))) {
+      names.remove(stored);
+      stored.setName(names.uniqueName(updated.getName()));
+      names.add(stored);
     }
 
-    stored.setPoints(updated.getPersonalPoints());
+    setPoints(stored, updated.getPersonalPoints(), cause);
     stored.setTotalTasksCompleted(updated.getTotalTasksCompleted());
+    stored.nextVersion();
+    leaderboard.update(stored);
 
-    save();
+    saveChange(stored);
   }
 
 
+  private void setPoints(Member m, int points, PointsLedger.Cause cause) {
+    int delta = points - m.getPersonalPoints();
+    m.setPoints(points);
+    if (delta != 0) ledger.record(m.getId(), delta, points, cause);
+  }
+
+  // Sets every member back to 10 points.
   public void resetAllPoints() {
-    for (Member m : members.values()) {
-      m.setPoints(10);
-    }
-    save();
+    resetAllPoints(RolloverProgress.NONE);
+  }
+
+  public void resetAllPoints(RolloverProgress progress) {
+    PointsLedger.Cause cause = PointsLedger.Cause.of(PointsLedger.Reason.RESET);
+    write(() -> {
+      forAllMembers(m -> {
+        int delta = 10 - m.getPersonalPoints();
+        m.setPoints(10);
+        m.nextVersion();
+        return delta;
+      }, cause, progress);
+      save();
+    });
   }
 
   // ---------------- BONUS LOGIC ----------------
-  private double getBonusPercent(int tasksThisWeek) {
+  private static double getBonusPercent(int tasksThisWeek) {
     if (tasksThisWeek <= 1) return 0.30;
     if (tasksThisWeek <= 3) return 0.20;
     if (tasksThisWeek <= 5) return 0.10;
     return 0.0;
   }
 
+  // Pays each member's weekly bonus and starts their task count over.
   public void applyWeeklyBonusAndReset() {
-    for (Member m : members.values()) {
-      double bonusPercent = getBonusPercent(m.getTotalTasksCompleted());
-      if (bonusPercent > 0) {
-        int bonusAmount = (int) Math.round(Math.min(m.getPersonalPoints(), MAX_POINTS) * bonusPercent);
-        m.addPoints(bonusAmount);
+    applyWeeklyBonusAndReset(RolloverProgress.NONE);
+  }
+
+  public void applyWeeklyBonusAndReset(RolloverProgress progress) {
+    PointsLedger.Cause cause = PointsLedger.Cause.of(PointsLedger.Reason.WEEKLY_BONUS);
+    write(() -> {
+      forAllMembers(m -> {
+        double bonusPercent = getBonusPercent(m.getTotalTasksCompleted());
+        int bonusAmount = 0;
+        if (bonusPercent > 0) {
+          bonusAmount = (int) Math.round(Math.min(m.getPersonalPoints(), MAX_POINTS) * bonusPercent);
+          m.addPoints(bonusAmount);
+        }
+        m.setTotalTasksCompleted(0);
+        m.nextVersion();
+        return bonusAmount;
+      }, cause, progress);
+      save();
+    });
+  }
+
+  // ---------------- BATCH PASSES ----------------
+  // Members per fork-join leaf.
+  private static final int BATCH_PARTITION = 2048;
+
+  // Runs change on every member in parallel, then records the point changes
+  // it returns in the leaderboard and the ledger. Caller holds the write lock;
+  // change must only touch the member it is given.
+  private void forAllMembers(ToIntFunction<Member> change, PointsLedger.Cause cause, RolloverProgress progress) {
+    Member[] all = members.values().toArray(new Member[0]);
+    int[] deltas = new int[all.length];
+    progress.report(0, all.length);
+    ForkJoinPool.commonPool().invoke(
+        new MemberPass(all, deltas, 0, all.length, change, progress, new AtomicInteger()));
+
+    List<PointsLedger.Change> changes = new ArrayList<>();
+    for (int i = 0; i < all.length; i++) {
+      if (deltas[i] != 0) changes.add(new PointsLedger.Change(all[i].getId(), deltas[i], all[i].getPersonalPoints()));
+    }
+
+    if (changes.size() > all.length / 8) {
+      leaderboard.rebuild(Arrays.asList(all));
+    } else {
+      for (PointsLedger.Change c : changes) leaderboard.update(members.get(c.member()));
+    }
+    ledger.recordAll(changes, cause);
+  }
+
+  @SuppressWarnings("serial")  // never serialized
+  private static final class MemberPass extends RecursiveAction {
+    private final Member[] members;
+    private final int[] deltas;
+    private final int from;
+    private final int to;
+    private final ToIntFunction<Member> change;
+    private final RolloverProgress progress;
+    private final AtomicInteger done;
+
+    MemberPass(Member[] members, int[] deltas, int from, int to,
+               ToIntFunction<Member> change, RolloverProgress progress, AtomicInteger done) {
+      this.members = members;
+      this.deltas = deltas;
+      this.from = from;
+      this.to = to;
+      this.change = change;
+      this.progress = progress;
+      this.done = done;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > BATCH_PARTITION) {
+        int mid = (from + to) >>> 1;
+        invokeAll(
+            new MemberPass(members, deltas, from, mid, change, progress, done),
+            new MemberPass(members, deltas, mid, to, change, progress, done));
+        return;
       }
-      m.setTotalTasksCompleted(0);
+      for (int i = from; i < to; i++) deltas[i] = change.applyAsInt(members[i]);
+      progress.report(done.addAndGet(to - from), members.length);
     }
-    save();
   }
 
   public String getNameById(UUID id)
   {
-    Member member = members.get(id);
+    Member member = id != null ? read(() -> members.get(id)) : null;
     if (member != null) {
       return member.getName();
     }
     return "";
   }
+
+  // ---------------- LISTENERS ----------------
+  // Passes the listener the ledger entries dated since the given day and
+  // every member's points, then each batch of point changes as it is
+  // recorded. Runs under the write lock, so no change is missed or seen
+  // twice.
+  public void subscribe(PointsListener listener, LocalDate since) {
+    write(() -> ledger.subscribe(listener, since));
+  }
+
+  // ---------------- LEDGER ----------------
+  // Balance at the end of the given day, from the points ledger.
+  public int getPointsAsOf(UUID id, LocalDate date) {
+    Integer points = ledger.balanceAsOf(id, date);
+    return points != null ? points : 0;
+  }
+
+  public Map<UUID, Integer> getAllPointsAsOf(LocalDate date) {
+    return ledger.balancesAsOf(date);
+  }
 }
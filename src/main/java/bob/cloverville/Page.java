@@ -0,0 +1,45 @@
+package bob.cloverville;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+// One page of a cursor query. nextCursor is null on the last page; otherwise
+// pass it back to get the page that follows. Cursors name the last item
+// returned rather than an offset, so pages stay stable while items are added
+// or removed in between.
+public record Page<T>(List<T> items, String nextCursor) {
+
+  public static final int MAX_SIZE = 500;
+
+  public boolean hasMore() {
+    return nextCursor != null;
+  }
+
+  // -------- Cursor encoding (opaque to callers) --------
+  static String encode(String kind, String position) {
+    byte[] raw = (kind + ":" + position).getBytes(StandardCharsets.UTF_8);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+  }
+
+  // Returns the position stored in a cursor of the given kind, or null for a
+  // null cursor (the first page).
+  static String decode(String cursor, String kind) {
+    if (cursor == null) return null;
+
+    String raw;
+    try {
+      raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid page cursor.");
+    }
+    if (!raw.startsWith(kind + ":"))
+      throw new IllegalArgumentException("Invalid page cursor.");
+    return raw.substring(kind.length() + 1);
+  }
+
+  static void checkSize(int pageSize) {
+    if (pageSize < 1 || pageSize > MAX_SIZE)
+      throw new IllegalArgumentException("Page size must be between 1 and " + MAX_SIZE + ".");
+  }
+}
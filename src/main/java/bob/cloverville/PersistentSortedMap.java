@@ -0,0 +1,255 @@
+package bob.cloverville;
+
+import java.util.*;
+
+// Immutable sorted map. put and remove return a new map that shares every
+// node off the changed path with the old one (an AVL tree with path
+// copying), so keeping an old version costs nothing and a reader holding a
+// reference always sees one consistent state. Nodes carry subtree sizes, so
+// the values view supports get(i) in O(log n).
+public final class PersistentSortedMap<K, V> {
+
+  private static final class Node<K, V> {
+    final K key;
+    final V value;
+    final Node<K, V> left;
+    final Node<K, V> right;
+    final int height;
+    final int size;
+
+    Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+      this.key = key;
+      this.value = value;
+      this.left = left;
+      this.right = right;
+      this.height = 1 + Math.max(height(left), height(right));
+      this.size = 1 + size(left) + size(right);
+    }
+  }
+
+  private final Comparator<? super K> order;
+  private final Node<K, V> root;
+
+  private PersistentSortedMap(Comparator<? super K> order, Node<K, V> root) {
+    this.order = order;
+    this.root = root;
+  }
+
+  public static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> empty() {
+    return new PersistentSortedMap<>(Comparator.naturalOrder(), null);
+  }
+
+  // Builds a balanced map in O(n) from keys already in ascending order.
+  public static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> fromSorted(List<K> keys, List<V> values) {
+    if (keys.size() != values.size()) throw new IllegalArgumentException("Keys and values differ in length.");
+    return new PersistentSortedMap<>(Comparator.naturalOrder(), build(keys, values, 0, keys.size()));
+  }
+
+  private static <K, V> Node<K, V> build(List<K> keys, List<V> values, int from, int to) {
+    if (from >= to) return null;
+    int mid = (from + to) >>> 1;
+    return new Node<>(keys.get(mid), values.get(mid), build(keys, values, from, mid), build(keys, values, mid + 1, to));
+  }
+
+  // ========================================================================
+  // READS
+  // ========================================================================
+  public int size() {
+    return size(root);
+  }
+
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  public V get(K key) {
+    Node<K, V> n = root;
+    while (n != null) {
+      int c = order.compare(key, n.key);
+      if (c == 0) return n.value;
+      n = c < 0 ? n.left : n.right;
+    }
+    return null;
+  }
+
+  // Read-only view of the values in key order. Iteration is O(n), get(i) O(log n).
+  public List<V> values() {
+    return new Values<>(root);
+  }
+
+  // Entries with keys strictly after the given key (all entries if null), in
+  // key order. Finding the start is O(log n); each step after that is O(1)
+  // amortised.
+  public Iterator<Map.Entry<K, V>> entriesAfter(K after) {
+    Deque<Node<K, V>> path = new ArrayDeque<>();
+    for (Node<K, V> n = root; n != null; ) {
+      if (after == null || order.compare(after, n.key) < 0) {
+        path.push(n);
+        n = n.left;
+      } else {
+        n = n.right;
+      }
+    }
+
+    return new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        return !path.isEmpty();
+      }
+
+      @Override
+      public Map.Entry<K, V> next() {
+        if (path.isEmpty()) throw new NoSuchElementException();
+        Node<K, V> n = path.pop();
+        for (Node<K, V> c = n.right; c != null; c = c.left) path.push(c);
+        return Map.entry(n.key, n.value);
+      }
+    };
+  }
+
+  // ========================================================================
+  // UPDATES (return a new map)
+  // ========================================================================
+  public PersistentSortedMap<K, V> put(K key, V value) {
+    Node<K, V> updated = put(root, key, value);
+    return updated == root ? this : new PersistentSortedMap<>(order, updated);
+  }
+
+  public PersistentSortedMap<K, V> remove(K key) {
+    Node<K, V> updated = remove(root, key);
+    return updated == root ? this : new PersistentSortedMap<>(order, updated);
+  }
+
+  private Node<K, V> put(Node<K, V> n, K key, V value) {
+    if (n == null) return new Node<>(key, value, null, null);
+
+    int c = order.compare(key, n.key);
+    if (c < 0) {
+      Node<K, V> left = put(n.left, key, value);
+      return left == n.left ? n : balance(n.key, n.value, left, n.right);
+    }
+    if (c > 0) {
+      Node<K, V> right = put(n.right, key, value);
+      return right == n.right ? n : balance(n.key, n.value, n.left, right);
+    }
+    return n.value == value ? n : new Node<>(key, value, n.left, n.right);
+  }
+
+  private Node<K, V> remove(Node<K, V> n, K key) {
+    if (n == null) return null;
+
+    int c = order.compare(key, n.key);
+    if (c < 0) {
+      Node<K, V> left = remove(n.left, key);
+      return left == n.left ? n : balance(n.key, n.value, left, n.right);
+    }
+    if (c > 0) {
+      Node<K, V> right = remove(n.right, key);
+      return right == n.right ? n : balance(n.key, n.value, n.left, right);
+    }
+
+    if (n.left == null) return n.right;
+    if (n.right == null) return n.left;
+
+    Node<K, V> min = n.right;
+    while (min.left != null) min = min.left;
+    return balance(min.key, min.value, n.left, removeMin(n.right));
+  }
+
+  private static <K, V> Node<K, V> removeMin(Node<K, V> n) {
+    if (n.left == null) return n.right;
+    return balance(n.key, n.value, removeMin(n.left), n.right);
+  }
+
+  private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+    int hl = height(left);
+    int hr = height(right);
+
+    if (hl > hr + 1) {
+      if (height(left.left) >= height(left.right))
+        return new Node<>(left.key, left.value, left.left, new Node<>(key, value, left.right, right));
+      Node<K, V> lr = left.right;
+      return new Node<>(lr.key, lr.value,
+          new Node<>(left.key, left.value, left.left, lr.left),
+          new Node<>(key, value, lr.right, right));
+    }
+
+    if (hr > hl + 1) {
+      if (height(right.right) >= height(right.left))
+        return new Node<>(right.key, right.value, new Node<>(key, value, left, right.left), right.right);
+      Node<K, V> rl = right.left;
+      return new Node<>(rl.key, rl.value,
+          new Node<>(key, value, left, rl.left),
+          new Node<>(right.key, right.value, rl.right, right.right));
+    }
+
+    return new Node<>(key, value, left, right);
+  }
+
+  private static int height(Node<?, ?> n) {
+    return n != null ? n.height : 0;
+  }
+
+  private static int size(Node<?, ?> n) {
+    return n != null ? n.size : 0;
+  }
+
+  // ========================================================================
+  // VALUES VIEW
+  // ========================================================================
+  private static final class Values<V> extends AbstractList<V> {
+    private final Node<?, V> root;
+
+    Values(Node<?, V> root) {
+      this.root = root;
+    }
+
+    @Override
+    public int size() {
+      return PersistentSortedMap.size(root);
+    }
+
+    @Override
+    public V get(int index) {
+      if (index < 0 || index >= size()) throw new IndexOutOfBoundsException(index);
+
+      Node<?, V> n = root;
+      while (true) {
+        int leftSize = PersistentSortedMap.size(n.left);
+        if (index < leftSize) {
+          n = n.left;
+        } else if (index == leftSize) {
+          return n.value;
+        } else {
+          index -= leftSize + 1;
+          n = n.right;
+        }
+      }
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+      return new Iterator<>() {
+        private final Deque<Node<?, V>> path = new ArrayDeque<>();
+        { descend(root); }
+
+        private void descend(Node<?, V> n) {
+          for (; n != null; n = n.left) path.push(n);
+        }
+
+        @Override
+        public boolean hasNext() {
+          return !path.isEmpty();
+        }
+
+        @Override
+        public V next() {
+          if (path.isEmpty()) throw new NoSuchElementException();
+          Node<?, V> n = path.pop();
+          descend(n.right);
+          return n.value;
+        }
+      };
+    }
+  }
+}
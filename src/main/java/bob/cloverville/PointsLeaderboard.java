@@ -0,0 +1,211 @@
+package bob.cloverville;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Members ordered by personal points (highest first, ties by id), kept in an
+// indexable skip list: every forward link records how many members it skips,
+// so rank, top-N and point ranges are O(log n) without sorting. Points are
+// changed on the stored Member objects, so the points each member was filed
+// under are remembered and used to find its node again.
+public class PointsLeaderboard {
+
+  private static final int MAX_LEVEL = 32;
+
+  private static final class Node {
+    final Member member;
+    final UUID id;
+    final int points;
+    final Node[] next;
+    final int[] span;
+
+    Node(Member member, int points, int level) {
+      this.member = member;
+      this.id = member != null ? member.getId() : null;
+      this.points = points;
+      this.next = new Node[level];
+      this.span = new int[level];
+    }
+  }
+
+  private final Node head = new Node(null, 0, MAX_LEVEL);
+  private final Map<UUID, Integer> filedPoints = new HashMap<>();
+  private int level = 1;
+  private int size;
+
+  // ========================================================================
+  // MAINTENANCE
+  // ========================================================================
+  // Adds the member, or moves it if its points changed since it was filed.
+  public void update(Member m) {
+    Integer old = filedPoints.get(m.getId());
+    if (old != null) {
+      if (old == m.getPersonalPoints()) return;
+      unlink(old, m.getId());
+    }
+    insert(m);
+  }
+
+  // Replaces the contents with the given members in O(n log n) for the sort
+  // plus O(n) for the links; cheaper than n updates once most members moved.
+  public void rebuild(Collection<Member> members) {
+    Member[] sorted = members.toArray(new Member[0]);
+    Arrays.parallelSort(sorted, Comparator.comparingInt(Member::getPersonalPoints).reversed()
+        .thenComparing(Member::getId));
+
+    Arrays.fill(head.next, null);
+    Arrays.fill(head.span, 0);
+    filedPoints.clear();
+    level = 1;
+    size = sorted.length;
+
+    Node[] last = new Node[MAX_LEVEL];
+    int[] lastRank = new int[MAX_LEVEL];
+    Arrays.fill(last, head);
+
+    for (int rank = 1; rank <= sorted.length; rank++) {
+      Member m = sorted[rank - 1];
+      Node node = new Node(m, m.getPersonalPoints(), randomLevel());
+      for (int i = 0; i < node.next.length; i++) {
+        last[i].next[i] = node;
+        last[i].span[i] = rank - lastRank[i];
+        last[i] = node;
+        lastRank[i] = rank;
+      }
+      level = Math.max(level, node.next.length);
+      filedPoints.put(m.getId(), node.points);
+    }
+    // Links to the end span the members after the node.
+    for (int i = 0; i < level; i++) last[i].span[i] = size - lastRank[i];
+  }
+
+  public void remove(UUID id) {
+    Integer old = filedPoints.remove(id);
+    if (old != null) unlink(old, id);
+  }
+
+  private void insert(Member m) {
+    int points = m.getPersonalPoints();
+    UUID id = m.getId();
+
+    Node[] update = new Node[MAX_LEVEL];
+    int[] rankAt = new int[MAX_LEVEL];
+    Node x = head;
+    for (int i = level - 1; i >= 0; i--) {
+      rankAt[i] = i == level - 1 ? 0 : rankAt[i + 1];
+      while (x.next[i] != null && before(x.next[i], points, id)) {
+        rankAt[i] += x.span[i];
+        x = x.next[i];
+      }
+      update[i] = x;
+    }
+
+    int nodeLevel = randomLevel();
+    if (nodeLevel > level) {
+      for (int i = level; i < nodeLevel; i++) {
+        rankAt[i] = 0;
+        update[i] = head;
+        head.span[i] = size;
+      }
+      level = nodeLevel;
+    }
+
+    Node node = new Node(m, points, nodeLevel);
+    for (int i = 0; i < nodeLevel; i++) {
+      node.next[i] = update[i].next[i];
+      update[i].next[i] = node;
+      node.span[i] = update[i].span[i] - (rankAt[0] - rankAt[i]);
+      update[i].span[i] = rankAt[0] - rankAt[i] + 1;
+    }
+    for (int i = nodeLevel; i < level; i++) {
+      update[i].span[i]++;
+    }
+
+    filedPoints.put(id, points);
+    size++;
+  }
+
+  private void unlink(int points, UUID id) {
+    Node[] update = new Node[MAX_LEVEL];
+    Node x = head;
+    for (int i = level - 1; i >= 0; i--) {
+      while (x.next[i] != null && before(x.next[i], points, id)) x = x.next[i];
+      update[i] = x;
+    }
+
+    Node target = x.next[0];
+    if (target == null || !target.id.equals(id)) return;
+
+    for (int i = 0; i < level; i++) {
+      if (update[i].next[i] == target) {
+        update[i].span[i] += target.span[i] - 1;
+        update[i].next[i] = target.next[i];
+      } else {
+        update[i].span[i]--;
+      }
+    }
+    while (level > 1 && head.next[level - 1] == null) level--;
+    size--;
+  }
+
+  // True if node sorts before the (points, id) key.
+  private static boolean before(Node node, int points, UUID id) {
+    return node.points > points || (node.points == points && node.id.compareTo(id) < 0);
+  }
+
+  private static int randomLevel() {
+    int level = 1;
+    while (level < MAX_LEVEL && ThreadLocalRandom.current().nextInt(4) == 0) level++;
+    return level;
+  }
+
+  // ========================================================================
+  // QUERIES
+  // ========================================================================
+  public int size() {
+    return size;
+  }
+
+  // 1 for the member with the most points, 0 if the member is not filed.
+  public int rank(UUID id) {
+    Integer points = filedPoints.get(id);
+    if (points == null) return 0;
+
+    int rank = 0;
+    Node x = head;
+    for (int i = level - 1; i >= 0; i--) {
+      while (x.next[i] != null && (before(x.next[i], points, id) || x.next[i].id.equals(id))) {
+        rank += x.span[i];
+        x = x.next[i];
+      }
+      if (x != head && x.id.equals(id)) return rank;
+    }
+    return 0;
+  }
+
+  public List<Member> top(int n) {
+    if (n < 0) throw new IllegalArgumentException("Count cannot be negative.");
+
+    List<Member> result = new ArrayList<>(Math.min(n, size));
+    for (Node x = head.next[0]; x != null && result.size() < n; x = x.next[0]) {
+      result.add(x.member);
+    }
+    return result;
+  }
+
+  // Members with points in [min, max], highest first.
+  public List<Member> withPointsBetween(int min, int max) {
+    if (min > max) throw new IllegalArgumentException("Minimum must not be above maximum.");
+
+    Node x = head;
+    for (int i = level - 1; i >= 0; i--) {
+      while (x.next[i] != null && x.next[i].points > max) x = x.next[i];
+    }
+
+    List<Member> result = new ArrayList<>();
+    for (x = x.next[0]; x != null && x.points >= min; x = x.next[0]) {
+      result.add(x.member);
+    }
+    return result;
+  }
+}
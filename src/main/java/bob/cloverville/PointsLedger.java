@@ -0,0 +1,435 @@
+package bob.cloverville;
+
+import com.google.gson.JsonParseException;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Append-only record of every change to a member's points. Each credit or
+// debit is an immutable Entry (one JSON line in points.ledger) carrying the
+// member, the change, the balance after it and why it happened. Current
+// balances are kept in memory; on startup they are rebuilt from the newest
+// snapshot plus the entries written after it.
+//
+// About every SNAPSHOT_EVERY entries the balances are written to a snapshot file
+// that also records how far into the ledger it reaches. Snapshots are kept,
+// so balancesAsOf(date) starts from the newest one taken by that date and
+// only replays the entries after it.
+//
+// Entries are buffered and written by the WriteBehindQueue with the other
+// stores, so a command batch writes its ledger entries once.
+public final class PointsLedger {
+
+  private static final int SNAPSHOT_EVERY = Integer.getInteger("cloverville.ledgerSnapshotEvery", 10_000);
+  private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.json");
+
+  public enum Reason {
+    OPENING,        // member added, or the ledger started
+    TRADE,          // trade task or goods completed
+    COMMUNAL,       // communal task completed
+    WEEKLY_BONUS,
+    RESET,          // six-monthly point reset
+    ADJUSTMENT,     // edited by hand
+    RECONCILE,      // stored points differed from the ledger at startup
+    REMOVED         // member deleted; balance goes to 0
+  }
+
+  // Why a balance changed, and the activity behind it if any.
+  public record Cause(Reason reason, UUID activityId) {
+    public static final Cause ADJUSTMENT = new Cause(Reason.ADJUSTMENT, null);
+
+    public static Cause of(Reason reason) {
+      return new Cause(reason, null);
+    }
+  }
+
+  public record Entry(
+      long seq,
+      Instant at,
+      LocalDate date,
+      UUID member,
+      int delta,
+      int balance,
+      Reason reason,
+      UUID activity) {
+
+    // Same JSON Gson would write, built by hand: a weekly run encodes one
+    // entry per member. No field needs escaping.
+    String toJson() {
+      return new StringBuilder(192)
+          .append("{\"seq\":").append(seq)
+          .append(",\"at\":\"").append(at)
+          .append("\",\"date\":\"").append(date)
+          .append("\",\"member\":\"").append(member)
+          .append("\",\"delta\":").append(delta)
+          .append(",\"balance\":").append(balance)
+          .append(",\"reason\":\"").append(reason)
+          .append("\",\"activity\":").append(activity != null ? "\"" + activity + "\"" : "null")
+          .append("}\n")
+          .toString();
+    }
+  }
+
+  // One member's change within recordAll.
+  public record Change(UUID member, int delta, int balance) {}
+
+  // Balances after entry seq; entries for later seqs start at offset.
+  private record Snapshot(long seq, LocalDate date, long offset, Map<UUID, Integer> balances) {}
+
+  private record SnapshotInfo(long seq, LocalDate date, long offset, Path file) {}
+
+  private final Path ledgerFile;
+  private final Path dir;
+  private final WriteBehindQueue writeQueue;
+
+  // Guarded by "this".
+  private final Map<UUID, Integer> balances = new HashMap<>();
+  private final List<SnapshotInfo> snapshots = new ArrayList<>();
+  private long lastSeq;
+  private LocalDate lastDate;
+  private long end;  // ledger length including buffered entries
+  private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  private List<Snapshot> pendingSnapshots = new ArrayList<>();
+  private boolean scheduled;
+
+  // Serialises flushes so entries reach the file in seq order.
+  private final Object fileLock = new Object();
+  private long written;  // ledger length on disk; guarded by fileLock
+
+  private final List<PointsListener> listeners = new CopyOnWriteArrayList<>();
+
+  public PointsLedger(Path dir, WriteBehindQueue writeQueue) {
+    this.dir = dir;
+    this.ledgerFile = dir.resolve("points.ledger");
+    this.writeQueue = writeQueue;
+
+    try {
+      Files.createDirectories(dir);
+      load();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to open points ledger in " + dir, e);
+    }
+    writeQueue.attach(this::flush);
+  }
+
+  // ========================================================================
+  // RECORDING
+  // ========================================================================
+  // Records a change to a member's balance. Called with the member's lock
+  // held, so the entries for one member are in order.
+  public synchronized void record(UUID member, int delta, int balance, Cause cause) {
+    recordAll(List.of(new Change(member, delta, balance)), cause);
+  }
+
+  // Records many changes with the same cause, e.g. a whole weekly bonus
+  // run. Lines are encoded in parallel; seqs follow the order of changes.
+  public synchronized void recordAll(List<Change> changes, Cause cause) {
+    if (changes.isEmpty()) return;
+
+    Instant now = Instant.now();
+    LocalDate today = LocalDate.now();
+    long firstSeq = lastSeq + 1;
+    long snapshotsBefore = lastSeq / SNAPSHOT_EVERY;
+
+    List<Entry> entries = new ArrayList<>(changes.size());
+    for (int i = 0; i < changes.size(); i++) {
+      Change c = changes.get(i);
+      Entry entry = new Entry(firstSeq + i, now, today, c.member(), c.delta(), c.balance(), cause.reason(), cause.activityId());
+      apply(balances, entry);
+      entries.add(entry);
+    }
+    lastSeq = firstSeq + changes.size() - 1;
+    lastDate = today;
+
+    List<Entry> recorded = Collections.unmodifiableList(entries);
+    for (PointsListener listener : listeners) listener.recorded(recorded);
+
+    (entries.size() > 1000 ? entries.parallelStream() : entries.stream())
+        .map(e -> e.toJson().getBytes(StandardCharsets.UTF_8))
+        .forEachOrdered(line -> {
+          pending.write(line, 0, line.length);
+          end += line.length;
+        });
+
+    if (lastSeq / SNAPSHOT_EVERY > snapshotsBefore)
+      pendingSnapshots.add(new Snapshot(lastSeq, lastDate, end, new HashMap<>(balances)));
+
+    if (!scheduled) {
+      scheduled = true;
+      writeQueue.schedule(this::flush);
+    }
+  }
+
+  // Adds entries that bring the ledger in line with the given members: an
+  // opening balance for members it has never seen, a correction where the
+  // stored points differ, and a removal for members that no longer exist.
+  public synchronized void reconcile(Collection<Member> members) {
+    boolean fresh = lastSeq == 0;
+    Set<UUID> seen = new HashSet<>();
+    for (Member m : members) {
+      seen.add(m.getId());
+      Integer known = balances.get(m.getId());
+      int points = m.getPersonalPoints();
+      if (known == null) {
+        record(m.getId(), points, points, Cause.of(Reason.OPENING));
+      } else if (known != points) {
+        record(m.getId(), points - known, points, Cause.of(fresh ? Reason.OPENING : Reason.RECONCILE));
+      }
+    }
+    for (UUID id : new ArrayList<>(balances.keySet())) {
+      if (!seen.contains(id)) record(id, -balances.get(id), 0, Cause.of(Reason.REMOVED));
+    }
+  }
+
+  private static void apply(Map<UUID, Integer> balances, Entry entry) {
+    if (entry.reason() == Reason.REMOVED) balances.remove(entry.member());
+    else balances.put(entry.member(), entry.balance());
+  }
+
+  // ========================================================================
+  // QUERIES
+  // ========================================================================
+  public synchronized Integer balance(UUID member) {
+    return balances.get(member);
+  }
+
+  // Balance at the end of the given day, or null if the member had none.
+  public Integer balanceAsOf(UUID member, LocalDate date) {
+    return balancesAsOf(date).get(member);
+  }
+
+  // Every member's balance at the end of the given day. Reads the newest
+  // snapshot taken by then and the entries after it, not the whole ledger.
+  public Map<UUID, Integer> balancesAsOf(LocalDate date) {
+    SnapshotInfo start = null;
+    synchronized (this) {
+      if (lastDate == null || !date.isBefore(lastDate)) return new HashMap<>(balances);
+      for (SnapshotInfo s : snapshots) {
+        if (s.date().isAfter(date)) break;
+        start = s;
+      }
+    }
+    flush();
+
+    Snapshot base = start != null ? readSnapshot(start.file()) : null;
+    Map<UUID, Integer> result = base != null ? new HashMap<>(base.balances()) : new HashMap<>();
+    try (BufferedReader in = openAt(base != null ? base.offset() : 0)) {
+      for (String line; (line = in.readLine()) != null; ) {
+        Entry entry = parse(line);
+        if (entry == null) continue;
+        if (entry.date().isAfter(date)) break;
+        apply(result, entry);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return result;
+  }
+
+  // ========================================================================
+  // LISTENERS
+  // ========================================================================
+  // Replays the entries dated since the given day, then the current balances,
+  // and from then on passes the listener each batch as it is recorded. The
+  // caller must keep anything else from recording until this returns.
+  public void subscribe(PointsListener listener, LocalDate since) {
+    flush();
+
+    SnapshotInfo start = null;
+    synchronized (this) {
+      for (SnapshotInfo s : snapshots) {
+        if (!s.date().isBefore(since)) break;
+        start = s;
+      }
+    }
+
+    List<Entry> past = new ArrayList<>();
+    try (BufferedReader in = openAt(start != null ? start.offset() : 0)) {
+      for (String line; (line = in.readLine()) != null; ) {
+        Entry entry = parse(line);
+        if (entry != null && !entry.date().isBefore(since)) past.add(entry);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    synchronized (this) {
+      listener.recorded(Collections.unmodifiableList(past));
+      listener.balances(Map.copyOf(balances));
+      listeners.add(listener);
+    }
+  }
+
+  // ========================================================================
+  // WRITING (writer thread)
+  // ========================================================================
+  // Writes buffered entries, then any snapshots that fell due. If the append
+  // fails the file is cut back to the last complete write and the entries go
+  // back in front of the buffer, so snapshot offsets stay right; the write
+  // is retried after the write delay and the failure is thrown.
+  public void flush() {
+    synchronized (fileLock) {
+      byte[] bytes;
+      List<Snapshot> due;
+      synchronized (this) {
+        scheduled = false;
+        if (pending.size() == 0 && pendingSnapshots.isEmpty()) return;
+        bytes = pending.toByteArray();
+        due = pendingSnapshots;
+        pending = new ByteArrayOutputStream();
+        pendingSnapshots = new ArrayList<>();
+      }
+
+      if (bytes.length > 0) {
+        try {
+          DurableFile.append(ledgerFile, bytes);
+          written += bytes.length;
+        } catch (IOException e) {
+          truncate(written);
+          requeue(bytes, due);
+          throw new UncheckedIOException("Failed to write points ledger " + ledgerFile, e);
+        }
+      }
+
+      for (int i = 0; i < due.size(); i++) {
+        try {
+          writeSnapshot(due.get(i));
+        } catch (IOException e) {
+          requeue(new byte[0], new ArrayList<>(due.subList(i, due.size())));
+          throw new UncheckedIOException("Failed to write ledger snapshot in " + dir, e);
+        }
+      }
+    }
+  }
+
+  // Puts unwritten entries and snapshots back ahead of anything recorded
+  // since, and schedules another attempt.
+  private synchronized void requeue(byte[] bytes, List<Snapshot> due) {
+    ByteArrayOutputStream merged = new ByteArrayOutputStream(bytes.length + pending.size());
+    merged.writeBytes(bytes);
+    merged.writeBytes(pending.toByteArray());
+    pending = merged;
+    due.addAll(pendingSnapshots);
+    pendingSnapshots = due;
+
+    if (!scheduled) {
+      scheduled = true;
+      writeQueue.schedule(this::flush);
+    }
+  }
+
+  // Drops a partly appended write, so the retry starts where it should.
+  private void truncate(long length) {
+    if (!Files.exists(ledgerFile)) return;
+    try (FileChannel ch = FileChannel.open(ledgerFile, StandardOpenOption.WRITE)) {
+      if (ch.size() > length) ch.truncate(length);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void writeSnapshot(Snapshot snapshot) throws IOException {
+    Path file = dir.resolve(String.format("snapshot-%012d.json", snapshot.seq()));
+    DurableFile.write(file, GsonProvider.compact().toJson(snapshot).getBytes(StandardCharsets.UTF_8));
+    synchronized (this) {
+      snapshots.add(new SnapshotInfo(snapshot.seq(), snapshot.date(), snapshot.offset(), file));
+    }
+  }
+
+  // ========================================================================
+  // LOADING
+  // ========================================================================
+  private void load() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "snapshot-*.json")) {
+      for (Path file : files) {
+        Matcher m = SNAPSHOT_NAME.matcher(file.getFileName().toString());
+        if (!m.matches()) continue;
+        Snapshot s = readSnapshot(file);
+        if (s != null) snapshots.add(new SnapshotInfo(s.seq(), s.date(), s.offset(), file));
+      }
+    }
+    snapshots.sort(Comparator.comparingLong(SnapshotInfo::seq));
+
+    long size = Files.exists(ledgerFile) ? Files.size(ledgerFile) : 0;
+    snapshots.removeIf(s -> s.offset() > size);  // ledger lost its tail
+
+    long offset = 0;
+    if (!snapshots.isEmpty()) {
+      SnapshotInfo latest = snapshots.get(snapshots.size() - 1);
+      balances.putAll(readSnapshot(latest.file()).balances());
+      lastSeq = latest.seq();
+      lastDate = latest.date();
+      offset = latest.offset();
+    }
+
+    // Replay the tail. A torn last line (crash mid-append, so no newline) is
+    // cut off; a damaged line before it is reported and skipped, never used
+    // to cut the entries after it.
+    long good = offset;
+    if (size > offset) {
+      try (InputStream in = new BufferedInputStream(Files.newInputStream(ledgerFile))) {
+        in.skipNBytes(offset);
+        byte[] tail = in.readAllBytes();
+        int start = 0;
+        for (int i = 0; i < tail.length; i++) {
+          if (tail[i] != '\n') continue;
+          String line = new String(tail, start, i - start, StandardCharsets.UTF_8);
+          Entry entry = parse(line);
+          if (entry != null) {
+            apply(balances, entry);
+            lastSeq = entry.seq();
+            lastDate = entry.date();
+          } else if (!line.isBlank()) {
+            System.err.println("Skipping damaged entry at byte " + (offset + start) + " of " + ledgerFile);
+          }
+          start = i + 1;
+        }
+        good = offset + start;
+      }
+    }
+    if (good < size) {
+      try (FileChannel ch = FileChannel.open(ledgerFile, StandardOpenOption.WRITE)) {
+        ch.truncate(good);
+      }
+    }
+    end = good;
+    written = good;
+  }
+
+  private Snapshot readSnapshot(Path file) {
+    byte[] content = DurableFile.read(file);
+    if (content == null) content = DurableFile.readPrevious(file);
+    if (content == null) return null;
+    try {
+      Snapshot s = GsonProvider.compact().fromJson(new String(content, StandardCharsets.UTF_8), Snapshot.class);
+      return s != null && s.balances() != null ? s : null;
+    } catch (JsonParseException e) {
+      return null;
+    }
+  }
+
+  private BufferedReader openAt(long offset) throws IOException {
+    if (!Files.exists(ledgerFile)) return new BufferedReader(Reader.nullReader());
+    InputStream in = Files.newInputStream(ledgerFile);
+    in.skipNBytes(offset);
+    return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+  }
+
+  private static Entry parse(String line) {
+    if (line.isBlank()) return null;
+    try {
+      Entry entry = GsonProvider.compact().fromJson(line, Entry.class);
+      return entry != null && entry.member() != null && entry.date() != null ? entry : null;
+    } catch (JsonParseException e) {
+      return null;
+    }
+  }
+}
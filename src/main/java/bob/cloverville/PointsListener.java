@@ -0,0 +1,17 @@
+package bob.cloverville;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Told about every entry added to the points ledger. Called with the ledger
+// locked, so batches arrive in seq order; must not call back into the ledger
+// or MemberService.
+public interface PointsListener {
+
+  // New entries, in seq order.
+  void recorded(List<PointsLedger.Entry> entries);
+
+  // Every member's points at the moment the listener subscribed.
+  void balances(Map<UUID, Integer> balances);
+}
@@ -0,0 +1,35 @@
+package bob.cloverville;
+
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Re-runs an optimistic update that lost a race. The action must re-read
+// whatever it depends on each time; anything it throws other than
+// ConcurrentModificationException is passed straight through.
+public final class Retry {
+
+  private Retry() {}
+
+  public static <T> T onConflict(int attempts, Supplier<T> action) {
+    if (attempts < 1) throw new IllegalArgumentException("Attempts must be at least 1.");
+
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return action.get();
+      } catch (ConcurrentModificationException e) {
+        if (attempt >= attempts) throw e;
+        // Short randomized pause so two writers do not collide again in step.
+        LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(50_000L << Math.min(attempt, 6)));
+      }
+    }
+  }
+
+  public static void onConflict(int attempts, Runnable action) {
+    onConflict(attempts, () -> {
+      action.run();
+      return null;
+    });
+  }
+}
@@ -0,0 +1,12 @@
+package bob.cloverville;
+
+// Progress of a pass over every member: done out of total. Called from the
+// worker threads doing the pass, so hop to the UI thread before touching
+// controls.
+@FunctionalInterface
+public interface RolloverProgress {
+
+  RolloverProgress NONE = (done, total) -> {};
+
+  void report(int done, int total);
+}
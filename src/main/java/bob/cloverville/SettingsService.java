@@ -2,6 +2,7 @@ package bob.cloverville;
 
 import java.time.LocalDate;
 
+// Thread-safe: every method synchronizes on the service.
 public class SettingsService {
 
   private final JsonStorage<Settings> storage;
@@ -14,39 +15,51 @@ public class SettingsService {
   }
 
   // Get the current settings object
-  public Settings getSettings() {
+  public synchronized Settings getSettings() {
     return settings;
   }
 
   // Save current settings to JSON
-  public void save() {
+  public synchronized void save() {
     storage.saveSingle(settings);
   }
 
+  // Set the values edited on the settings screen and save, in one step so
+  // a concurrent addCommunityPoints cannot be lost
+  public synchronized void updateSettings(int communityPoints, String communityGoal, int targetPoints) {
+    if (communityGoal == null || communityGoal.isBlank())
+      throw new IllegalArgumentException("Community goal cannot be blank.");
+
+    settings.setCommunityPoints(communityPoints);
+    settings.setCommunityGoal(communityGoal);
+    settings.setTargetPoints(targetPoints);
+    save();
+  }
+
   // Add points to community pool and save
-  public void addCommunityPoints(int points) {
+  public synchronized void addCommunityPoints(int points) {
     settings.addCommunityPoints(points);
     save();
   }
 
   // Update last reset date
-  public void updateLastResetDate() {
+  public synchronized void updateLastResetDate() {
     settings.setLastResetDate(java.time.LocalDate.now());
     save();
   }
 
   // Update bonus rules
-  public boolean isWeeklyResetDue() {
+  public synchronized boolean isWeeklyResetDue() {
     return settings.getLastResetDate().plusWeeks(1).isBefore(LocalDate.now()) || settings.getLastResetDate().plusWeeks(1).isEqual(LocalDate.now());
   }
 
-  public boolean isMonthlyPointResetDue() {
+  public synchronized boolean isMonthlyPointResetDue() {
     return settings.getPointResetDate() != null &&
         (settings.getPointResetDate().plusMonths(6).isBefore(LocalDate.now()) ||
          settings.getPointResetDate().plusMonths(6).isEqual(LocalDate.now()));
   }
 
-  public void updatePointResetDate() {
+  public synchronized void updatePointResetDate() {
     settings.setPointResetDate(LocalDate.now());
     save();
   }
@@ -3,10 +3,14 @@ package bob.cloverville;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.util.List;
 
 public class UIUtils {
 
@@ -21,6 +25,35 @@ public class UIUtils {
     label.setVisible(true);
     label.setText(message);
   }
+
+  // Error alert for a failed async service call.
+  public static void showError(Throwable error) {
+    String message = error.getMessage() != null ? error.getMessage() : error.toString();
+    new Alert(Alert.AlertType.ERROR, message, ButtonType.OK).showAndWait();
+  }
+
+  // File chooser for the formats BulkImporter reads.
+  public static FileChooser importChooser(String title) {
+    FileChooser chooser = new FileChooser();
+    chooser.setTitle(title);
+    chooser.getExtensionFilters().addAll(
+        new FileChooser.ExtensionFilter("CSV or NDJSON", "*.csv", "*.ndjson", "*.jsonl"),
+        new FileChooser.ExtensionFilter("All files", "*.*"));
+    return chooser;
+  }
+
+  // Lists the first rows that failed an import; nothing was imported.
+  public static void showImportErrors(List<BulkImporter.RowError> errors) {
+    int shown = Math.min(errors.size(), 20);
+    StringBuilder message = new StringBuilder("Nothing was imported. Fix these rows and try again:\n\n");
+    for (int i = 0; i < shown; i++) message.append(errors.get(i)).append('\n');
+    if (errors.size() > shown) message.append("... and ").append(errors.size() - shown).append(" more");
+
+    Alert alert = new Alert(Alert.AlertType.ERROR, message.toString(), ButtonType.OK);
+    alert.setHeaderText(errors.size() + " invalid rows");
+    alert.showAndWait();
+  }
+
   public static void switchScene(Stage stage, String fxmlPath, String title) {
     try {
       FXMLLoader loader = new FXMLLoader(UIUtils.class.getResource(fxmlPath));
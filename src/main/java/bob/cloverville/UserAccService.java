@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+// Thread-safe: every method synchronizes on the service.
 public class UserAccService {
 
   private final List<UserAccount> accounts;
@@ -15,7 +16,7 @@ public class UserAccService {
   }
 
   // ---------- AUTHENTICATION ----------
-  public UserAccount authenticate(String username, String passwordHash) {
+  public synchronized UserAccount authenticate(String username, String passwordHash) {
 
     if (username == null || passwordHash == null || username.isBlank() || passwordHash.isBlank())
       throw new IllegalArgumentException("Username and Password cannot be blank.");
@@ -30,7 +31,7 @@ public class UserAccService {
   }
 
   // ---------- ADD USER ----------
-  public void addUser(UserAccount account) {
+  public synchronized void addUser(UserAccount account) {
 
     if (account == null)
       throw new IllegalArgumentException("UserAccount cannot be null.");
@@ -51,18 +52,18 @@ public class UserAccService {
   }
 
   // ---------- DELETE USER ----------
-  public void deleteUser(UserAccount account) {
+  public synchronized void deleteUser(UserAccount account) {
     accounts.remove(account);
     save();
   }
 
   // ---------- FIND ALL ----------
-  public List<UserAccount> getAll() {
+  public synchronized List<UserAccount> getAll() {
     return new ArrayList<>(accounts);
   }
 
   // ---------- FIND BY ID ----------
-  public UserAccount getById(UUID id) {
+  public synchronized UserAccount getById(UUID id) {
     if (id == null)
       throw new IllegalArgumentException("ID cannot be null.");
 
@@ -74,7 +75,7 @@ public class UserAccService {
   }
 
   // ---------- FIND BY USERNAME ----------
-  public UserAccount getByUsername(String username) {
+  public synchronized UserAccount getByUsername(String username) {
     if (username == null)
       throw new IllegalArgumentException("Username cannot be null.");
     if (username.isBlank())
@@ -88,7 +89,7 @@ public class UserAccService {
   }
 
   // ---------- UPDATE ----------
-  public void changePassword(UserAccount user, String newHash) {
+  public synchronized void changePassword(UserAccount user, String newHash) {
     if (user == null)
       throw new IllegalArgumentException("User must not be null.");
     if (newHash == null)
@@ -98,7 +99,7 @@ public class UserAccService {
     save();
   }
 
-  public void changeUsername(UserAccount user, String newName) {
+  public synchronized void changeUsername(UserAccount user, String newName) {
     if (user == null)
       throw new IllegalArgumentException("User must not be null.");
     if (newName == null)
@@ -113,6 +114,6 @@ public class UserAccService {
 
   // ---------- SAVE TO JSON ----------
   private void save() {
-    storage.save(accounts);
+    storage.save(new ArrayList<>(accounts));
   }
 }
@@ -0,0 +1,121 @@
+package bob.cloverville;
+
+import com.google.gson.Gson;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+// Background writer shared by all write-behind storages. Changes are marked
+// dirty on the caller's thread and written by a single "cloverville-writer"
+// thread at most maxDelayMillis later, so a burst of saves becomes one write.
+public class WriteBehindQueue {
+
+  private final ScheduledExecutorService executor;
+  private final long maxDelayMillis;
+  private final List<Runnable> flushers = new CopyOnWriteArrayList<>();
+
+  public WriteBehindQueue(long maxDelayMillis) {
+    if (maxDelayMillis < 0)
+      throw new IllegalArgumentException("Write delay cannot be negative.");
+
+    this.maxDelayMillis = maxDelayMillis;
+    this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "cloverville-writer");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  // Puts a write-behind layer in front of the given storage. Saved records
+  // are copied with copy before the caller's lock is released.
+  public <T> JsonStorage<T> wrap(JsonStorage<T> storage, UnaryOperator<T> copy) {
+    WriteBehindStorage<T> wrapped = new WriteBehindStorage<>(storage, this, copy);
+    flushers.add(wrapped::flush);
+    return wrapped;
+  }
+
+  // As above, copying records through Gson.
+  public <T> JsonStorage<T> wrap(JsonStorage<T> storage) {
+    return wrap(storage, WriteBehindQueue::gsonCopy);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T gsonCopy(T record) {
+    Gson gson = GsonProvider.compact();
+    return record == null ? null : (T) gson.fromJson(gson.toJsonTree(record), record.getClass());
+  }
+
+  // Adds another write-behind source (one that buffers its own changes) to
+  // the ones flushAll writes out.
+  public void attach(Runnable flush) {
+    flushers.add(flush);
+  }
+
+  // Runs flush on the writer thread after the write delay. A failure is
+  // printed; the source is expected to have put its changes back.
+  public void schedule(Runnable flush) {
+    executor.schedule(() -> {
+      try {
+        flush.run();
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+      }
+    }, maxDelayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  // Writes everything pending and waits for it to reach the storages. Every
+  // source is flushed even if one fails; the first failure is then thrown
+  // with the others suppressed, so the caller knows the data is not on disk.
+  public void flushAll() {
+    Future<?> done;
+    try {
+      done = executor.submit(this::runFlushers);
+    } catch (RejectedExecutionException e) {
+      throw new IllegalStateException("Write queue is shut down.", e);
+    }
+
+    try {
+      done.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for writes.", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException r ? r : new IllegalStateException(e.getCause());
+    }
+  }
+
+  private void runFlushers() {
+    RuntimeException failure = null;
+    for (Runnable flusher : flushers) {
+      try {
+        flusher.run();
+      } catch (RuntimeException e) {
+        if (failure == null) failure = e;
+        else failure.addSuppressed(e);
+      }
+    }
+    if (failure != null) throw failure;
+  }
+
+  // Flushes synchronously and stops the writer thread. Called on app exit.
+  public void shutdown() {
+    try {
+      flushAll();
+    } catch (RuntimeException e) {
+      e.printStackTrace();
+    }
+    executor.shutdown();
+    try {
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
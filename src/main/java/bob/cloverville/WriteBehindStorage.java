@@ -0,0 +1,155 @@
+package bob.cloverville;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+// Collects saves in memory and hands them to the wrapped storage from the
+// WriteBehindQueue thread. Only the latest state of each record or file is
+// written, no matter how many times it was saved in between.
+//
+// Records are copied when saved, on the caller's thread and under its lock,
+// so the writer never serializes an object the services are changing. A
+// failed write is put back, retried after the write delay and thrown.
+public class WriteBehindStorage<T> extends JsonStorage<T> {
+
+  private final JsonStorage<T> delegate;
+  private final WriteBehindQueue queue;
+  private final UnaryOperator<T> copy;
+
+  // Pending state, guarded by "this".
+  private List<T> pendingSnapshot;
+  private T pendingSingle;
+  private Map<UUID, T> pendingChanges = new LinkedHashMap<>();
+  private Map<UUID, T> pendingRemovals = new LinkedHashMap<>();
+  private boolean scheduled;
+
+  WriteBehindStorage(JsonStorage<T> delegate, WriteBehindQueue queue, UnaryOperator<T> copy) {
+    super(delegate);
+    this.delegate = delegate;
+    this.queue = queue;
+    this.copy = copy;
+  }
+
+  // -------- READS --------
+  @Override
+  public List<T> load() {
+    return delegate.load();
+  }
+
+  @Override
+  public T loadSingle() {
+    return delegate.loadSingle();
+  }
+
+  // -------- WRITES --------
+  @Override
+  public synchronized void save(List<T> data) {
+    // A full snapshot supersedes any record changes queued before it.
+    pendingSnapshot = new ArrayList<>(data.size());
+    for (T item : data) pendingSnapshot.add(copy.apply(item));
+    pendingChanges.clear();
+    pendingRemovals.clear();
+    markDirty();
+  }
+
+  @Override
+  public synchronized void saveChange(Collection<T> all, T changed) {
+    if (!(delegate instanceof JournalStorage<T> journal)) {
+      save(new ArrayList<>(all));
+      return;
+    }
+
+    UUID id = journal.keyOf(changed);
+    pendingRemovals.remove(id);
+    pendingChanges.put(id, copy.apply(changed));
+    markDirty();
+  }
+
+  @Override
+  public synchronized void saveRemoval(Collection<T> all, T removed) {
+    if (!(delegate instanceof JournalStorage<T> journal)) {
+      save(new ArrayList<>(all));
+      return;
+    }
+
+    UUID id = journal.keyOf(removed);
+    pendingChanges.remove(id);
+    pendingRemovals.put(id, removed);
+    markDirty();
+  }
+
+  @Override
+  public synchronized void saveSingle(T value) {
+    pendingSingle = copy.apply(value);
+    markDirty();
+  }
+
+  private void markDirty() {
+    if (scheduled) return;
+    scheduled = true;
+    queue.schedule(this::flush);
+  }
+
+  // -------- FLUSH --------
+  // Runs on the queue thread only, so the delegate never sees concurrent writes.
+  void flush() {
+    List<T> snapshot;
+    T single;
+    Map<UUID, T> changes;
+    Map<UUID, T> removals;
+
+    synchronized (this) {
+      snapshot = pendingSnapshot;
+      single = pendingSingle;
+      changes = pendingChanges;
+      removals = pendingRemovals;
+
+      pendingSnapshot = null;
+      pendingSingle = null;
+      pendingChanges = new LinkedHashMap<>();
+      pendingRemovals = new LinkedHashMap<>();
+      scheduled = false;
+    }
+
+    try {
+      if (snapshot != null) delegate.save(snapshot);
+      snapshot = null;
+      if (single != null) delegate.saveSingle(single);
+      single = null;
+      if (!changes.isEmpty() || !removals.isEmpty())
+        ((JournalStorage<T>) delegate).saveChanges(changes.values(), removals.values());
+    } catch (RuntimeException e) {
+      requeue(snapshot, single, changes, removals);
+      throw e;
+    }
+  }
+
+  // Puts back what was not written, under anything saved since.
+  private synchronized void requeue(List<T> snapshot, T single, Map<UUID, T> changes, Map<UUID, T> removals) {
+    if (pendingSingle == null) pendingSingle = single;
+
+    // A newer snapshot supersedes everything that failed.
+    if (pendingSnapshot == null) {
+      pendingSnapshot = snapshot;
+      for (Map.Entry<UUID, T> e : pendingChanges.entrySet()) {
+        removals.remove(e.getKey());
+        changes.remove(e.getKey());
+        changes.put(e.getKey(), e.getValue());
+      }
+      for (Map.Entry<UUID, T> e : pendingRemovals.entrySet()) {
+        changes.remove(e.getKey());
+        removals.put(e.getKey(), e.getValue());
+      }
+      pendingChanges = changes;
+      pendingRemovals = removals;
+    }
+
+    scheduled = false;
+    markDirty();
+  }
+}
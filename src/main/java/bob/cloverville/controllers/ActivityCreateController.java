@@ -6,6 +6,7 @@ import javafx.scene.control.*;
 import javafx.stage.Stage;
 import javafx.util.StringConverter;
 
+import java.io.File;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -20,10 +21,10 @@ public class ActivityCreateController {
   @FXML private ComboBox<Member> cbReceiver;
 
   @FXML private Button btnCreate;
+  @FXML private Button btnImport;
   @FXML private Button btnClose;
 
   private final MemberService memberService = AppContext.get().memberService();
-  private final ActivityService activityService = AppContext.get().activityService();
 
   @FXML
   public void initialize() {
@@ -111,21 +112,46 @@ public class ActivityCreateController {
           deadline
       );
 
-      activityService.addActivity(a);
-      if (cbReceiver.getValue() != null && cbPerformer.getValue() != null){
-        activityService.completeActivity(a.getId());
-      }
-
-      // Refresh dashboard
-      AppContext.get().getDashboardController().loadTasksView();
-
-      closeWindow();
+      btnCreate.setDisable(true);
+      AppContext.get().async().addAndCompleteActivity(a).whenComplete((ignored, error) -> {
+        btnCreate.setDisable(false);
+        if (error != null) {
+          UIUtils.showError(error);
+          return;
+        }
+        // Refresh dashboard
+        AppContext.get().getDashboardController().loadTasksView();
+        closeWindow();
+      });
     } catch (Exception ex) {
       Alert a = new Alert(Alert.AlertType.ERROR, ex.getMessage(), ButtonType.OK);
       a.showAndWait();
     }
   }
 
+  // Adds every row of a CSV or NDJSON file, or none if any row is invalid.
+  @FXML
+  private void importActivities() {
+    File file = UIUtils.importChooser("Import Activities").showOpenDialog(btnImport.getScene().getWindow());
+    if (file == null) return;
+
+    btnImport.setDisable(true);
+    AppContext.get().async().importActivities(file.toPath()).whenComplete((batch, error) -> {
+      btnImport.setDisable(false);
+      if (error != null) {
+        UIUtils.showError(error);
+        return;
+      }
+      if (!batch.isValid()) {
+        UIUtils.showImportErrors(batch.errors());
+        return;
+      }
+      AppContext.get().getDashboardController().loadTasksView();
+      new Alert(Alert.AlertType.INFORMATION, "Imported " + batch.records().size() + " activities.", ButtonType.OK).showAndWait();
+      closeWindow();
+    });
+  }
+
   @FXML
   private void closeWindow() {
     Stage stage = (Stage) btnClose.getScene().getWindow();
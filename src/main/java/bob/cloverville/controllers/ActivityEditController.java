@@ -7,6 +7,8 @@ import javafx.stage.Stage;
 import javafx.util.StringConverter;
 
 import java.time.LocalDate;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.CompletableFuture;
 
 public class ActivityEditController {
 
@@ -29,7 +31,6 @@ public class ActivityEditController {
   private Activity activity;
 
   private final MemberService memberService = AppContext.get().memberService();
-  private final ActivityService activityService = AppContext.get().activityService();
 
   @FXML
   public void initialize() {
@@ -62,7 +63,8 @@ public class ActivityEditController {
   }
 
   public void setActivity(Activity activity) {
-    this.activity = activity;
+    // Edit a copy so a cancelled dialog changes nothing and a stale save is rejected.
+    this.activity = AppContext.get().activityService().copyOf(activity.getId());
     populateFields();
     configureFieldsByType();
   }
@@ -127,35 +129,8 @@ public class ActivityEditController {
   @FXML
   private void saveChanges() {
     try {
-      // Validate title/description
-      String title = txtTitle.getText().trim();
-      String desc = txtDescription.getText().trim();
-      int points = spnPoints.getValue();
-
-      activity.setTitle(title);
-      activity.setDescription(desc);
-      activity.setPointValue(points);
-
-      // Validate deadline
-      if (!dpDeadline.isDisabled()) {
-        activity.setDeadline(dpDeadline.getValue());
-      }
-
-      // Validate performer/receiver
-      if (!cbPerformer.isDisabled()) {
-        Member performer = cbPerformer.getValue();
-        activity.setPerformerID(performer != null ? performer.getId() : null);
-      }
-
-      if (!cbReceiver.isDisabled()) {
-        Member receiver = cbReceiver.getValue();
-        activity.setReceiverID(receiver != null ? receiver.getId() : null);
-      }
-
-      activityService.updateActivity(activity);
-      AppContext.get().getDashboardController().loadTasksView();
-      ((Stage) btnSave.getScene().getWindow()).close();
-
+      applyFields();
+      submit(AppContext.get().async().updateActivity(activity));
     } catch (Exception ex) {
       Alert a = new Alert(Alert.AlertType.ERROR, ex.getMessage(), ButtonType.OK);
       a.showAndWait();
@@ -165,16 +140,70 @@ public class ActivityEditController {
   @FXML
   private void completeActivity() {
     try {
-      saveChanges();
-      activityService.completeActivity(activity.getId());
-      AppContext.get().getDashboardController().loadTasksView();
-      closeWindow();
+      applyFields();
+      submit(AppContext.get().async().updateAndCompleteActivity(activity));
     } catch (Exception ex) {
       Alert a = new Alert(Alert.AlertType.ERROR, ex.getMessage(), ButtonType.OK);
       a.showAndWait();
     }
   }
 
+  // Buttons stay disabled while the save runs. On success the dialog closes;
+  // on failure it stays open with the buttons back.
+  private void submit(CompletableFuture<Void> save) {
+    btnSave.setDisable(true);
+    btnComplete.setDisable(true);
+    save.whenComplete((ignored, error) -> {
+      if (error != null) {
+        // Retry from the stored version, in case part of the command was
+        // saved. A conflict is left as is so the other change isn't overwritten.
+        if (!(error instanceof ConcurrentModificationException)) refreshCopy();
+        btnSave.setDisable(false);
+        configureFieldsByType();
+        UIUtils.showError(error);
+        return;
+      }
+      AppContext.get().getDashboardController().loadTasksView();
+      closeWindow();
+    });
+  }
+
+  // The fields keep what was typed; applyFields copies them over again.
+  private void refreshCopy() {
+    try {
+      activity = AppContext.get().activityService().copyOf(activity.getId());
+    } catch (IllegalArgumentException deleted) {
+      // keep the old copy; the next save reports that the activity is gone
+    }
+  }
+
+  private void applyFields() {
+    // Validate title/description
+    String title = txtTitle.getText().trim();
+    String desc = txtDescription.getText().trim();
+    int points = spnPoints.getValue();
+
+    activity.setTitle(title);
+    activity.setDescription(desc);
+    activity.setPointValue(points);
+
+    // Validate deadline
+    if (!dpDeadline.isDisabled()) {
+      activity.setDeadline(dpDeadline.getValue());
+    }
+
+    // Validate performer/receiver
+    if (!cbPerformer.isDisabled()) {
+      Member performer = cbPerformer.getValue();
+      activity.setPerformerID(performer != null ? performer.getId() : null);
+    }
+
+    if (!cbReceiver.isDisabled()) {
+      Member receiver = cbReceiver.getValue();
+      activity.setReceiverID(receiver != null ? receiver.getId() : null);
+    }
+  }
+
   @FXML
   private void closeWindow() {
     Stage stage = (Stage) btnCancel.getScene().getWindow();
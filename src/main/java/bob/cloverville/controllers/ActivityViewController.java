@@ -26,7 +26,6 @@ public class ActivityViewController {
   @FXML private Button btnClose;
 
   private Activity activity;
-  private final ActivityService activityService = AppContext.get().activityService();
 
   public void setActivity(Activity activity) {
     this.activity = activity;
@@ -69,14 +68,14 @@ public class ActivityViewController {
 
     confirm.showAndWait().ifPresent(response -> {
       if (response == ButtonType.OK) {
-        try {
-          activityService.deleteActivity(activity);
+        AppContext.get().async().deleteActivity(activity).whenComplete((ignored, error) -> {
+          if (error != null) {
+            UIUtils.showError(error);
+            return;
+          }
           AppContext.get().getDashboardController().loadTasksView();
-        } catch (Exception ex) {
-          ex.printStackTrace();
-        }
-
-        closeWindow();
+          closeWindow();
+        });
       }
     });
   }
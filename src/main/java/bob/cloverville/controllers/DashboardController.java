@@ -1,6 +1,7 @@
 package bob.cloverville.controllers;
 
 import bob.cloverville.*;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
@@ -44,6 +45,7 @@ public class DashboardController {
 
   private final MemberService memberService = AppContext.get().memberService();
   private final ActivityService activityService = AppContext.get().activityService();
+  private final CommunityStats stats = AppContext.get().stats();
 
   private final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
@@ -53,10 +55,8 @@ public class DashboardController {
   @FXML
   public void initialize() {
     tableView.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_ALL_COLUMNS);
-    activityService.weeklyGreenReset();
     setupButtons();
-    resetWeeklyCommunalTasks();
-    resetPersonalPointsIfDue();
+    AppContext.get().startScheduler(Platform::runLater, this::loadCurrentView);
     loadCurrentView();
     setupSearch();
     setupAddButton();
@@ -101,86 +101,27 @@ public class DashboardController {
   }
 
   private void applyFilter(String filter) {
-    List<Activity> allActivities = activityService.getAll();
-    List<Activity> filtered;
-
     if (filter == null) filter = lastFilter != null ? lastFilter : "Default";
     lastFilter = filter;
 
-    switch (filter) {
-      case "Completed":
-        filtered = allActivities.stream()
-            .filter(a -> a.getCompletedAt() != null)
-            .toList();
-        break;
-
-      case "With Deadline":
-        filtered = allActivities.stream()
-            .filter(a -> a.getDeadline() != null)
-            .toList();
-        break;
-
-      case "GREEN Activities":
-        filtered = allActivities.stream()
-            .filter(a -> a.getType() == ActivityType.GREEN)
-            .toList();
-        break;
-
-      case "COMMUNAL Activities":
-        filtered = allActivities.stream()
-            .filter(a -> a.getType() == ActivityType.COMMUNAL)
-            .toList();
-        break;
-
-      case "TRADE Tasks":
-        filtered = allActivities.stream()
-            .filter(a -> a.getType() == ActivityType.TRADE_TASK)
-            .toList();
-        break;
-
-      case "TRADE Goods":
-        filtered = allActivities.stream()
-            .filter(a -> a.getType() == ActivityType.TRADE_GOODS)
-            .toList();
-        break;
-
-      case "All":
-        filtered = allActivities;
-        break;
-
-      default: // "Default"
-        filtered = allActivities.stream()
-            .filter(a -> a.getCompletedAt() == null && a.getType() != ActivityType.GREEN)
-            .toList();
-        break;
-    }
-
-    tableView.setItems(FXCollections.observableArrayList(filtered));
+    tableView.setItems(FXCollections.observableArrayList(
+        activityService.query(queryForFilter(filter)).toList()));
   }
 
-  private void resetWeeklyCommunalTasks() {
-    if (!AppContext.get().settingsService().isWeeklyResetDue())
-      return;
-
-    activityService.getAll().stream()
-        .filter(a -> a.getType() == ActivityType.COMMUNAL)
-        .forEach(a -> {
-          a.setDeadline(LocalDate.now().plusWeeks(1));
-          a.setCreatedAt(LocalDate.now());
-          a.setPerformerID(null);
-          activityService.updateActivity(a);
-        });
-    memberService.applyWeeklyBonusAndReset();
-
-    AppContext.get().settingsService().updateLastResetDate();
-  }
-
-  private void resetPersonalPointsIfDue() {
-    SettingsService settingsService = AppContext.get().settingsService();
-    if (settingsService.isMonthlyPointResetDue()) {
-      memberService.resetAllPoints();
-      settingsService.updatePointResetDate();
-    }
+  // Maps a filter name from the combo box to an activity query.
+  private ActivityQuery queryForFilter(String filter) {
+    return switch (filter) {
+      case "Completed" -> ActivityQuery.all().completed(true);
+      case "With Deadline" -> ActivityQuery.all().withDeadline();
+      case "GREEN Activities" -> ActivityQuery.all().ofType(ActivityType.GREEN);
+      case "COMMUNAL Activities" -> ActivityQuery.all().ofType(ActivityType.COMMUNAL);
+      case "TRADE Tasks" -> ActivityQuery.all().ofType(ActivityType.TRADE_TASK);
+      case "TRADE Goods" -> ActivityQuery.all().ofType(ActivityType.TRADE_GOODS);
+      case "All" -> ActivityQuery.all();
+      default -> ActivityQuery.all() // "Default"
+          .ofType(ActivityType.TRADE_TASK, ActivityType.TRADE_GOODS, ActivityType.COMMUNAL)
+          .completed(false);
+    };
   }
 
 
@@ -285,6 +226,12 @@ public class DashboardController {
       return new SimpleStringProperty(m.getName());
     });
 
+    TableColumn<Object, Number> rankCol = new TableColumn<>("Rank");
+    rankCol.setCellValueFactory(cell -> {
+      Member m = (Member) cell.getValue();
+      return new SimpleIntegerProperty(memberService.getRank(m.getId()));
+    });
+
     TableColumn<Object, Number> ppCol = new TableColumn<>("Personal Points");
     ppCol.setCellValueFactory(cell -> {
       Member m = (Member) cell.getValue();
@@ -297,7 +244,13 @@ public class DashboardController {
       return new SimpleIntegerProperty(m.getTotalTasksCompleted());
     });
 
-    tableView.getColumns().addAll(nameCol, ppCol, tcCol,buildActionsColumn());
+    TableColumn<Object, Number> weekCol = new TableColumn<>("Earned This Week");
+    weekCol.setCellValueFactory(cell -> {
+      Member m = (Member) cell.getValue();
+      return new SimpleIntegerProperty(stats.getEarnedThisWeek(m.getId()));
+    });
+
+    tableView.getColumns().addAll(rankCol, nameCol, ppCol, tcCol, weekCol, buildActionsColumn());
 
     tableView.setItems(FXCollections.observableArrayList(memberService.getAll()));
   }
@@ -372,73 +325,13 @@ public class DashboardController {
 
   private void applySearch(String query) {
     if (currentMode == ViewMode.MEMBERS) {
-      List<Member> allMembers = memberService.getAll();
-      if (query.isBlank()) {
-        tableView.setItems(FXCollections.observableArrayList(allMembers));
-        return;
-      }
-
-      tableView.setItems(
-          FXCollections.observableArrayList(
-              allMembers.stream()
-                  .filter(m -> m.getName().toLowerCase().contains(query.toLowerCase()))
-                  .toList()
-          )
-      );
+      tableView.setItems(FXCollections.observableArrayList(memberService.search(query)));
       return;
     }
 
     // TASKS SEARCH + FILTER COMBINATION
-    List<Activity> filteredActivities;
-
-    switch (lastFilter != null ? lastFilter : "Default") {
-      case "Completed":
-        filteredActivities = activityService.getAll().stream()
-            .filter(a -> a.getCompletedAt() != null)
-            .toList();
-        break;
-      case "With Deadline":
-        filteredActivities = activityService.getAll().stream()
-            .filter(a -> a.getDeadline() != null)
-            .toList();
-        break;
-      case "GREEN Activities":
-        filteredActivities = activityService.getAll().stream()
-            .filter(a -> a.getType() == ActivityType.GREEN)
-            .toList();
-        break;
-      case "COMMUNAL Activities":
-        filteredActivities = activityService.getAll().stream()
-            .filter(a -> a.getType() == ActivityType.COMMUNAL)
-            .toList();
-        break;
-      case "TRADE Tasks":
-        filteredActivities = activityService.getAll().stream()
-            .filter(a -> a.getType() == ActivityType.TRADE_TASK)
-            .toList();
-        break;
-      case "TRADE Goods":
-        filteredActivities = activityService.getAll().stream()
-            .filter(a -> a.getType() == ActivityType.TRADE_GOODS)
-            .toList();
-        break;
-      case "All":
-        filteredActivities = activityService.getAll();
-        break;
-      default: // "Default"
-        filteredActivities = activityService.getAll().stream()
-            .filter(a -> a.getCompletedAt() == null && a.getType() != ActivityType.GREEN)
-            .toList();
-        break;
-    }
-
-    if (!query.isBlank()) {
-      filteredActivities = filteredActivities.stream()
-          .filter(a -> a.getTitle().toLowerCase().contains(query.toLowerCase()))
-          .toList();
-    }
-
-    tableView.setItems(FXCollections.observableArrayList(filteredActivities));
+    ActivityQuery q = queryForFilter(lastFilter != null ? lastFilter : "Default").matching(query);
+    tableView.setItems(FXCollections.observableArrayList(activityService.query(q).toList()));
   }
 
 
@@ -555,12 +448,16 @@ public class DashboardController {
     System.out.println("DELETE: " + item);
 
     if (item instanceof Member m) {
-      memberService.deleteMember(m);
-      loadMembersView();
+      AppContext.get().async().deleteMember(m).whenComplete((ignored, error) -> {
+        if (error != null) UIUtils.showError(error);
+        else loadMembersView();
+      });
     }
     if (item instanceof Activity a) {
-      activityService.deleteActivity(a);
-      loadTasksView();
+      AppContext.get().async().deleteActivity(a).whenComplete((ignored, error) -> {
+        if (error != null) UIUtils.showError(error);
+        else loadTasksView();
+      });
     }
   }
 
@@ -585,6 +482,21 @@ public class DashboardController {
     }
   }
 
+  @FXML
+  private void openTrendsWindow() {
+    try {
+      FXMLLoader loader = new FXMLLoader(getClass().getResource("/bob/cloverville/trends.fxml"));
+      Stage stage = new Stage();
+      stage.setTitle("Trends");
+      stage.setScene(new Scene(loader.load()));
+      stage.show();
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      Alert alert = new Alert(Alert.AlertType.ERROR, "Failed to open Trends window.", ButtonType.OK);
+      alert.showAndWait();
+    }
+  }
+
   @FXML
   private void openSettingsWindow() {
     try {
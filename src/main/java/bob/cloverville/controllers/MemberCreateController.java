@@ -5,6 +5,8 @@ import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.stage.Stage;
 
+import java.io.File;
+
 public class MemberCreateController {
 
   @FXML private TextField txtName;
@@ -12,10 +14,9 @@ public class MemberCreateController {
   @FXML private Spinner<Integer> spnTasksCompleted;
 
   @FXML private Button btnCreate;
+  @FXML private Button btnImport;
   @FXML private Button btnClose;
 
-  private final MemberService memberService = AppContext.get().memberService();
-
   @FXML
   public void initialize() {
     spnPoints.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(0, 9999, 10));
@@ -30,18 +31,46 @@ public class MemberCreateController {
       int tasksCompleted = spnTasksCompleted.getValue();
 
       Member m = new Member(name, points, tasksCompleted);
-      memberService.addMember(m);
-
-      // Refresh dashboard members view
-      AppContext.get().getDashboardController().loadMembersView();
-
-      closeWindow();
+      btnCreate.setDisable(true);
+      AppContext.get().async().addMember(m).whenComplete((ignored, error) -> {
+        btnCreate.setDisable(false);
+        if (error != null) {
+          UIUtils.showError(error);
+          return;
+        }
+        // Refresh dashboard members view
+        AppContext.get().getDashboardController().loadMembersView();
+        closeWindow();
+      });
     } catch (Exception ex) {
       Alert a = new Alert(Alert.AlertType.ERROR, ex.getMessage(), ButtonType.OK);
       a.showAndWait();
     }
   }
 
+  // Adds every row of a CSV or NDJSON file, or none if any row is invalid.
+  @FXML
+  private void importMembers() {
+    File file = UIUtils.importChooser("Import Members").showOpenDialog(btnImport.getScene().getWindow());
+    if (file == null) return;
+
+    btnImport.setDisable(true);
+    AppContext.get().async().importMembers(file.toPath()).whenComplete((batch, error) -> {
+      btnImport.setDisable(false);
+      if (error != null) {
+        UIUtils.showError(error);
+        return;
+      }
+      if (!batch.isValid()) {
+        UIUtils.showImportErrors(batch.errors());
+        return;
+      }
+      AppContext.get().getDashboardController().loadMembersView();
+      new Alert(Alert.AlertType.INFORMATION, "Imported " + batch.records().size() + " members.", ButtonType.OK).showAndWait();
+      closeWindow();
+    });
+  }
+
   @FXML
   private void closeWindow() {
     Stage stage = (Stage) btnClose.getScene().getWindow();
@@ -2,7 +2,7 @@ package bob.cloverville.controllers;
 
 import bob.cloverville.Member;
 import bob.cloverville.AppContext;
-import bob.cloverville.MemberService;
+import bob.cloverville.UIUtils;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.TextField;
@@ -18,13 +18,13 @@ public class MemberEditController {
   @FXML private Button btnCancel;
 
   private Member member;
-  private final MemberService memberService = AppContext.get().memberService();
 
   public void setMember(Member m) {
-    this.member = m;
-    txtName.setText(m.getName());
-    txtPoints.setText(String.valueOf(m.getPersonalPoints()));
-    txtTasksCompleted.setText(String.valueOf(m.getTotalTasksCompleted()));
+    // Edit a copy so a cancelled dialog changes nothing and a stale save is rejected.
+    this.member = AppContext.get().memberService().copyOf(m.getId());
+    txtName.setText(member.getName());
+    txtPoints.setText(String.valueOf(member.getPersonalPoints()));
+    txtTasksCompleted.setText(String.valueOf(member.getTotalTasksCompleted()));
   }
 
   @FXML
@@ -39,9 +39,16 @@ public class MemberEditController {
         member.setPoints(Integer.parseInt(txtPoints.getText().trim()));
         member.setTotalTasksCompleted(Integer.parseInt(txtTasksCompleted.getText().trim()));
 
-        memberService.updateMember(member);
-        AppContext.get().getDashboardController().loadMembersView();
-        ((Stage) btnSave.getScene().getWindow()).close();
+        btnSave.setDisable(true);
+        AppContext.get().async().updateMember(member).whenComplete((ignored, error) -> {
+          btnSave.setDisable(false);
+          if (error != null) {
+            UIUtils.showError(error);
+            return;
+          }
+          AppContext.get().getDashboardController().loadMembersView();
+          ((Stage) btnSave.getScene().getWindow()).close();
+        });
       } catch (Exception ex) {
         ex.printStackTrace();
       }
@@ -2,7 +2,7 @@ package bob.cloverville.controllers;
 
 import bob.cloverville.Member;
 import bob.cloverville.AppContext;
-import bob.cloverville.MemberService;
+import bob.cloverville.UIUtils;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
@@ -21,7 +21,6 @@ public class MemberViewController {
   @FXML private Button btnClose;
 
   private Member member;
-  private final MemberService memberService = AppContext.get().memberService();
 
   public void setMember(Member m) {
     this.member = m;
@@ -54,14 +53,14 @@ public class MemberViewController {
 
     confirm.showAndWait().ifPresent(response -> {
       if (response == ButtonType.OK) {
-        try {
-          memberService.deleteMember(member);
+        AppContext.get().async().deleteMember(member).whenComplete((ignored, error) -> {
+          if (error != null) {
+            UIUtils.showError(error);
+            return;
+          }
           AppContext.get().getDashboardController().loadMembersView();
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-
-        closeWindow();
+          closeWindow();
+        });
       }
     });
   }
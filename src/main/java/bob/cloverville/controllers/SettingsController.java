@@ -5,8 +5,6 @@ import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.stage.Stage;
 
-import java.time.LocalDate;
-
 public class SettingsController {
 
   @FXML private TextField txtCommunityPoints;
@@ -21,8 +19,6 @@ public class SettingsController {
   @FXML private Button btnReset;
 
   private final SettingsService settingsService = AppContext.get().settingsService();
-  private final MemberService memberService = AppContext.get().memberService();
-  private final ActivityService activityService = AppContext.get().activityService();
 
   private Settings settings;
 
@@ -33,49 +29,59 @@ public class SettingsController {
   }
   @FXML
   private void resetCommunalTasksManually() {
-    // Reset COMMUNAL tasks
-    activityService.getAll().stream()
-        .filter(a -> a.getType() == ActivityType.COMMUNAL)
-        .forEach(a -> {
-          a.setDeadline(LocalDate.now().plusWeeks(1));
-          a.setCreatedAt(LocalDate.now());
-          a.setCompletedAt(null);
-          a.setPerformerID(null);
-          a.setReceiverID(null);
-          activityService.updateActivity(a);
-        });
-
-    // Update last reset date
-    settingsService.updateLastResetDate();
-    memberService.applyWeeklyBonusAndReset();
-
-    // Optional: Feedback
-    Alert alert = new Alert(Alert.AlertType.INFORMATION,
-        "COMMUNAL tasks have been reset successfully!", ButtonType.OK);
-    alert.showAndWait();
-
-    // Refresh Dashboard table if open
-    DashboardController dashboard = AppContext.get().getDashboardController();
-    if (dashboard != null && "TASKS".equals(dashboard.getCurrentMode())) {
-      dashboard.loadTasksView();
-    }
+    // Reset COMMUNAL tasks, update last reset date and pay the weekly bonus
+    String label = btnReset.getText();
+    btnReset.setDisable(true);
+    AppContext.get().async().rolloverCommunal(showProgress(btnReset)).whenComplete((ignored, error) -> {
+      btnReset.setText(label);
+      btnReset.setDisable(false);
+      if (error != null) {
+        UIUtils.showError(error);
+        return;
+      }
+
+      // Optional: Feedback
+      Alert alert = new Alert(Alert.AlertType.INFORMATION,
+          "COMMUNAL tasks have been reset successfully!", ButtonType.OK);
+      alert.showAndWait();
 
+      // Reload settings display and refresh Dashboard table if open
+      loadSettings();
+      DashboardController dashboard = AppContext.get().getDashboardController();
+      if (dashboard != null && "TASKS".equals(dashboard.getCurrentMode())) {
+        dashboard.loadTasksView();
+      }
+    });
   }
 
   @FXML
   private void resetPointsManually() {
-    // Reset community points
-    memberService.resetAllPoints();
-    settings.setPointResetDate(LocalDate.now());
-    settingsService.save();
+    // Reset community points and record the reset date
+    String label = btnResetPoints.getText();
+    btnResetPoints.setDisable(true);
+    AppContext.get().async().resetAllPoints(showProgress(btnResetPoints)).whenComplete((ignored, error) -> {
+      btnResetPoints.setText(label);
+      btnResetPoints.setDisable(false);
+      if (error != null) {
+        UIUtils.showError(error);
+        return;
+      }
+
+      // Optional: Feedback
+      Alert alert = new Alert(Alert.AlertType.INFORMATION,
+          "Community points have been reset successfully!", ButtonType.OK);
+      alert.showAndWait();
 
-    // Optional: Feedback
-    Alert alert = new Alert(Alert.AlertType.INFORMATION,
-        "Community points have been reset successfully!", ButtonType.OK);
-    alert.showAndWait();
+      // Reload settings display
+      loadSettings();
+    });
+  }
 
-    // Reload settings display
-    loadSettings();
+  // Shows how far a reset has got on its (disabled) button.
+  private static RolloverProgress showProgress(Button button) {
+    return (done, total) -> {
+      if (total > 0 && done < total) button.setText("Working… " + (100L * done / total) + "%");
+    };
   }
 
   private void loadSettings() {
@@ -96,14 +102,16 @@ public class SettingsController {
       if (goal.isBlank())
         throw new IllegalArgumentException("Community goal cannot be blank.");
 
-      settings.setCommunityPoints(points);
-      settings.setCommunityGoal(goal);
-      settings.setTargetPoints(target);
-
-      settingsService.save();
-
-      Alert alert = new Alert(Alert.AlertType.INFORMATION, "Settings saved successfully.", ButtonType.OK);
-      alert.showAndWait();
+      btnSave.setDisable(true);
+      AppContext.get().async().updateSettings(points, goal, target).whenComplete((ignored, error) -> {
+        btnSave.setDisable(false);
+        if (error != null) {
+          UIUtils.showError(error);
+          return;
+        }
+        Alert alert = new Alert(Alert.AlertType.INFORMATION, "Settings saved successfully.", ButtonType.OK);
+        alert.showAndWait();
+      });
 
     } catch (NumberFormatException ex) {
       Alert alert = new Alert(Alert.AlertType.ERROR, "Points and Target must be valid numbers.", ButtonType.OK);
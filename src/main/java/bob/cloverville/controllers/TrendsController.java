@@ -0,0 +1,71 @@
+package bob.cloverville.controllers;
+
+import bob.cloverville.*;
+import bob.cloverville.ActivityRollups.Metric;
+import bob.cloverville.ActivityRollups.Resolution;
+import eu.hansolo.tilesfx.Tile;
+import eu.hansolo.tilesfx.TileBuilder;
+import javafx.fxml.FXML;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.ComboBox;
+import javafx.scene.layout.HBox;
+
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+public class TrendsController {
+
+  @FXML private ComboBox<Resolution> resolutionBox;
+  @FXML private HBox tileRow;
+
+  private final ActivityRollups rollups = AppContext.get().rollups();
+
+  private static final DateTimeFormatter DAY_LABEL = DateTimeFormatter.ofPattern("MM-dd");
+  private static final DateTimeFormatter MONTH_LABEL = DateTimeFormatter.ofPattern("yyyy-MM");
+
+  @FXML
+  public void initialize() {
+    resolutionBox.getItems().addAll(Resolution.values());
+    resolutionBox.setValue(Resolution.DAY);
+    resolutionBox.valueProperty().addListener((obs, oldVal, newVal) -> {
+      if (newVal != null) loadCharts(newVal);
+    });
+    loadCharts(Resolution.DAY);
+  }
+
+  private void loadCharts(Resolution resolution) {
+    // About a month of days, half a year of weeks, a year of months
+    int buckets = switch (resolution) {
+      case DAY -> 30;
+      case WEEK -> 26;
+      case MONTH -> 12;
+    };
+
+    tileRow.getChildren().setAll(
+        buildChart("Community Points", Metric.COMMUNITY_POINTS, resolution, buckets),
+        buildChart("Completed Tasks", Metric.COMPLETED_TASKS, resolution, buckets));
+  }
+
+  private Tile buildChart(String title, Metric metric, Resolution resolution, int buckets) {
+    ActivityRollups.Series series = rollups.latest(metric, resolution, buckets);
+
+    XYChart.Series<String, Number> data = new XYChart.Series<>();
+    data.setName(title);
+    for (int i = 0; i < series.values().length; i++) {
+      DateTimeFormatter label = resolution == Resolution.MONTH ? MONTH_LABEL : DAY_LABEL;
+      data.getData().add(new XYChart.Data<>(series.start(i).format(label), series.values()[i]));
+    }
+
+    // create() returns a raw builder; typed, and with the list overload of
+    // series(), the calls compile without unchecked warnings.
+    TileBuilder<?> builder = TileBuilder.create();
+    return builder
+        .skinType(Tile.SkinType.SMOOTHED_CHART)
+        .prefSize(420, 300)
+        .title(title)
+        .chartType(Tile.ChartType.AREA)
+        .smoothing(true)
+        .series(List.of(data))
+        .build();
+  }
+}
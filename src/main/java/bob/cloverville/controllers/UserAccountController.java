@@ -14,7 +14,6 @@ public class UserAccountController {
   @FXML private Button btnSave;
   @FXML private Button btnClose;
 
-  private final UserAccService userService = AppContext.get().userAccService();
   private UserAccount currentUser;
 
   public void setUser(UserAccount user) {
@@ -36,9 +35,19 @@ public class UserAccountController {
         lblPasswordError.setText("Password cannot be empty.");
         return;
       }
-      userService.changePassword(currentUser, newPassword);
-      lblPasswordError.setText("Password updated successfully!");
-      txtPassword.clear();
+      btnSave.setDisable(true);
+      AppContext.get().async().changePassword(currentUser, newPassword).whenComplete((ignored, error) -> {
+        btnSave.setDisable(false);
+        if (error instanceof IllegalArgumentException) {
+          lblPasswordError.setText(error.getMessage());
+        } else if (error != null) {
+          lblPasswordError.setText("An unexpected error occurred.");
+          error.printStackTrace();
+        } else {
+          lblPasswordError.setText("Password updated successfully!");
+          txtPassword.clear();
+        }
+      });
     } catch (IllegalArgumentException ex) {
       lblPasswordError.setText(ex.getMessage());
     } catch (Exception ex) {
@@ -0,0 +1,149 @@
+package bob.cloverville;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Member files only: they need no MemberService, which activity rows use to
+// resolve performer and receiver names.
+class BulkImporterTest {
+
+  private final BulkImporter importer = new BulkImporter(null);
+
+  // ========================================================================
+  // splitCsv
+  // ========================================================================
+  @Test
+  void splitsAndTrimsFields() {
+    assertEquals(List.of("a", "b", "", "c"), BulkImporter.splitCsv(" a ,b,, c"));
+    assertEquals(List.of(""), BulkImporter.splitCsv(""));
+  }
+
+  @Test
+  void quotedFieldsKeepCommasAndDoubledQuotes() {
+    assertEquals(List.of("a", "b, c", "say \"hi\""),
+        BulkImporter.splitCsv("a,\"b, c\",\"say \"\"hi\"\"\""));
+    assertEquals(List.of("", "x"), BulkImporter.splitCsv("\"\",x"));
+  }
+
+  @Test
+  void quotedFieldsKeepLineBreaks() {
+    assertEquals(List.of("one\ntwo", "3"), BulkImporter.splitCsv("\"one\ntwo\",3"));
+  }
+
+  @Test
+  void unclosedQuoteIsAnError() {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> BulkImporter.splitCsv("a,\"b,c"));
+    assertEquals("Unclosed quote", e.getMessage());
+  }
+
+  // ========================================================================
+  // CSV FILES
+  // ========================================================================
+  @Test
+  void readsMembersWithDefaults() throws IOException {
+    BulkImporter.Batch<Member> batch = readCsv("""
+        Name,Points,Tasks,Note
+        Alice,5,2,first
+        Bob,,,
+        """);
+
+    assertTrue(batch.isValid());
+    assertEquals(2, batch.records().size());
+    Member bob = batch.records().get(1);
+    assertEquals("Bob", bob.getName());
+    assertEquals(10, bob.getPersonalPoints());
+    assertEquals(0, bob.getTotalTasksCompleted());
+  }
+
+  // Errors name the line each record starts on, counting blank lines and
+  // the extra lines of multi-line records.
+  @Test
+  void multiLineRecordsKeepLineNumbers() throws IOException {
+    BulkImporter.Batch<Member> batch = readCsv("""
+        name,note,points
+        Alice,"line one
+        line two, with a comma",5
+
+        Bad!,x,1
+        Carol,"say ""hi""\",7
+        Dave,x,lots
+        """);
+
+    assertEquals(List.of("Alice", "Carol"), batch.records().stream().map(Member::getName).toList());
+    assertEquals(List.of(5L, 7L), batch.errors().stream().map(BulkImporter.RowError::line).toList());
+    assertEquals("points must be a whole number, not: lots", batch.errors().get(1).message());
+  }
+
+  @Test
+  void unclosedQuoteRunsToTheEndOfTheFile() throws IOException {
+    BulkImporter.Batch<Member> batch = readCsv("""
+        name,points
+        Alice,5
+        Bob,"3
+        Carol,4
+        """);
+
+    assertEquals(List.of("Alice"), batch.records().stream().map(Member::getName).toList());
+    assertEquals(List.of(new BulkImporter.RowError(3, "Unclosed quote")), batch.errors());
+  }
+
+  @Test
+  void wrongFieldCountIsAnError() throws IOException {
+    BulkImporter.Batch<Member> batch = readCsv("""
+        name,points
+        Alice,5,extra
+        """);
+
+    assertEquals("Line 2: Expected 2 fields, found 3", batch.errors().get(0).toString());
+  }
+
+  @Test
+  void badHeaderFailsTheFile() {
+    IllegalArgumentException missing = assertThrows(IllegalArgumentException.class,
+        () -> readCsv("points,tasks\n5,1\n"));
+    assertEquals("Missing column: name", missing.getMessage());
+
+    IllegalArgumentException empty = assertThrows(IllegalArgumentException.class,
+        () -> readCsv("\n\n"));
+    assertEquals("The file is empty.", empty.getMessage());
+  }
+
+  // ========================================================================
+  // NDJSON FILES
+  // ========================================================================
+  @Test
+  void readsNdjsonWithLineNumbers() throws IOException {
+    BulkImporter.Batch<Member> batch = importer.readMembers(new StringReader("""
+        {"Name": "Alice", "points": 5}
+
+        {"name": "Bob", "points": "x"}
+        not json
+        [1, 2]
+        {"name": "Carol", "tasks": null}
+        """), BulkImporter.Format.NDJSON);
+
+    assertEquals(List.of("Alice", "Carol"), batch.records().stream().map(Member::getName).toList());
+    assertEquals(List.of(
+        new BulkImporter.RowError(3, "points must be a whole number, not: x"),
+        new BulkImporter.RowError(4, "Not valid JSON"),
+        new BulkImporter.RowError(5, "Not a JSON object")), batch.errors());
+  }
+
+  @Test
+  void formatComesFromTheExtension() {
+    assertEquals(BulkImporter.Format.CSV, BulkImporter.Format.of(Path.of("members.CSV")));
+    assertEquals(BulkImporter.Format.NDJSON, BulkImporter.Format.of(Path.of("members.jsonl")));
+    assertThrows(IllegalArgumentException.class, () -> BulkImporter.Format.of(Path.of("members.txt")));
+  }
+
+  private BulkImporter.Batch<Member> readCsv(String text) throws IOException {
+    return importer.readMembers(new StringReader(text), BulkImporter.Format.CSV);
+  }
+}
@@ -0,0 +1,177 @@
+package bob.cloverville;
+
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandProcessorTest {
+
+  private static final Type STRING_LIST_TYPE = new TypeToken<List<String>>() {}.getType();
+
+  private final WriteBehindQueue writeQueue = new WriteBehindQueue(0);
+
+  @AfterEach
+  void stopWriter() {
+    writeQueue.shutdown();
+  }
+
+  // Many producers against a ring of 4 slots: every command runs once, each
+  // producer's commands run and complete in the order it submitted them.
+  @Test
+  void manyProducersSmallCapacity() throws Exception {
+    int producers = 8;
+    int perProducer = 2000;
+    CommandProcessor processor = new CommandProcessor(writeQueue, 4);
+
+    List<int[]> applied = new ArrayList<>();  // consumer thread only
+    AtomicInteger completions = new AtomicInteger();
+    AtomicInteger outOfOrder = new AtomicInteger();
+    List<List<CompletableFuture<Integer>>> futures = new ArrayList<>();
+
+    ExecutorService pool = Executors.newFixedThreadPool(producers);
+    List<Future<?>> running = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      int producer = p;
+      List<CompletableFuture<Integer>> mine = new ArrayList<>();
+      futures.add(mine);
+      running.add(pool.submit(() -> {
+        CompletableFuture<Integer> previous = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < perProducer; i++) {
+          int seq = i;
+          CompletableFuture<Integer> f = processor.submit(() -> {
+            applied.add(new int[] {producer, seq});
+            return seq;
+          });
+          CompletableFuture<Integer> before = previous;
+          f.whenComplete((value, error) -> {
+            completions.incrementAndGet();
+            if (!before.isDone()) outOfOrder.incrementAndGet();
+          });
+          mine.add(f);
+          previous = f;
+        }
+      }));
+    }
+    for (Future<?> r : running) r.get(30, TimeUnit.SECONDS);
+    pool.shutdown();
+
+    for (List<CompletableFuture<Integer>> mine : futures) {
+      for (int i = 0; i < perProducer; i++) {
+        assertEquals(i, mine.get(i).get(30, TimeUnit.SECONDS));
+      }
+    }
+    processor.shutdown();
+
+    assertEquals(producers * perProducer, completions.get());
+    assertEquals(0, outOfOrder.get());
+    assertEquals(producers * perProducer, applied.size());
+
+    int[] next = new int[producers];
+    for (int[] command : applied) {
+      assertEquals(next[command[0]], command[1], "producer " + command[0] + " ran out of order");
+      next[command[0]]++;
+    }
+  }
+
+  // Commands queued behind a slow one are all run before shutdown returns,
+  // and later ones are rejected.
+  @Test
+  void shutdownDrainsQueuedCommands() throws Exception {
+    CommandProcessor processor = new CommandProcessor(writeQueue, 64);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(1);
+
+    CompletableFuture<Void> slow = processor.submit(() -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+
+    AtomicInteger ran = new AtomicInteger();
+    List<CompletableFuture<Integer>> queued = new ArrayList<>();
+    for (int i = 0; i < 50; i++) queued.add(processor.submit(ran::incrementAndGet));
+
+    CompletableFuture.runAsync(release::countDown, CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS));
+    processor.shutdown();
+
+    assertTrue(slow.isDone());
+    for (CompletableFuture<Integer> f : queued) assertTrue(f.isDone() && !f.isCompletedExceptionally());
+    assertEquals(50, ran.get());
+
+    CompletableFuture<Integer> late = processor.submit(() -> 1);
+    ExecutionException rejected = assertThrows(ExecutionException.class, () -> late.get(10, TimeUnit.SECONDS));
+    assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+  }
+
+  @Test
+  void failingCommandOnlyFailsItself() throws Exception {
+    CommandProcessor processor = new CommandProcessor(writeQueue, 8);
+
+    CompletableFuture<Integer> bad = processor.submit(() -> {
+      throw new IllegalArgumentException("bad");
+    });
+    CompletableFuture<Integer> good = processor.submit(() -> 2);
+
+    ExecutionException failure = assertThrows(ExecutionException.class, () -> bad.get(10, TimeUnit.SECONDS));
+    assertEquals("bad", failure.getCause().getMessage());
+    assertEquals(2, good.get(10, TimeUnit.SECONDS));
+    processor.shutdown();
+  }
+
+  // A failed write fails the batch's commands, and the processor keeps going.
+  @Test
+  void failedWriteFailsTheBatch() throws Exception {
+    AtomicInteger failuresLeft = new AtomicInteger(1);
+    writeQueue.attach(() -> {
+      if (failuresLeft.getAndDecrement() > 0) throw new IllegalStateException("disk full");
+    });
+    CommandProcessor processor = new CommandProcessor(writeQueue, 8);
+
+    CompletableFuture<Integer> lost = processor.submit(() -> 1);
+    ExecutionException failure = assertThrows(ExecutionException.class, () -> lost.get(10, TimeUnit.SECONDS));
+    assertEquals("disk full", failure.getCause().getMessage());
+
+    assertEquals(2, processor.submit(() -> 2).get(10, TimeUnit.SECONDS));
+    processor.shutdown();
+  }
+
+  // A command whose storage write fails is not reported as done.
+  @Test
+  void failedStorageWriteFailsTheCommand(@TempDir Path dir) throws Exception {
+    Path blocker = dir.resolve("store");
+    Files.writeString(blocker, "not a directory");
+    Path file = blocker.resolve("list.json");
+    JsonStorage<String> storage = writeQueue.wrap(new JsonStorage<>(file.toString(), STRING_LIST_TYPE), s -> s);
+    CommandProcessor processor = new CommandProcessor(writeQueue, 8);
+
+    CompletableFuture<Void> lost = processor.submit(() -> storage.save(List.of("a")));
+    ExecutionException failure = assertThrows(ExecutionException.class, () -> lost.get(10, TimeUnit.SECONDS));
+    assertInstanceOf(UncheckedIOException.class, failure.getCause());
+
+    Files.delete(blocker);
+    Files.createDirectory(blocker);
+    processor.submit(() -> storage.save(List.of("a", "b"))).get(10, TimeUnit.SECONDS);
+    assertEquals(List.of("a", "b"), new JsonStorage<String>(file.toString(), STRING_LIST_TYPE).load());
+    processor.shutdown();
+  }
+
+  @Test
+  void rejectsBadCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> new CommandProcessor(writeQueue, 0));
+  }
+}
@@ -0,0 +1,123 @@
+package bob.cloverville;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Random puts and removes checked against a TreeMap, and old versions
+// checked to be left as they were.
+class PersistentSortedMapTest {
+
+  @Test
+  void matchesTreeMapAfterRandomChanges() {
+    Random random = new Random(7);
+    PersistentSortedMap<Integer, String> map = PersistentSortedMap.empty();
+    TreeMap<Integer, String> expected = new TreeMap<>();
+
+    for (int step = 0; step < 5000; step++) {
+      int key = random.nextInt(500);
+      if (random.nextInt(3) < 2) {
+        map = map.put(key, "v" + step);
+        expected.put(key, "v" + step);
+      } else {
+        map = map.remove(key);
+        expected.remove(key);
+      }
+      if (step % 50 == 0) check(map, expected, random);
+    }
+    check(map, expected, random);
+  }
+
+  @Test
+  void oldVersionsDoNotChange() {
+    Random random = new Random(11);
+    PersistentSortedMap<Integer, String> map = PersistentSortedMap.empty();
+    TreeMap<Integer, String> expected = new TreeMap<>();
+    List<PersistentSortedMap<Integer, String>> versions = new ArrayList<>();
+    List<TreeMap<Integer, String>> expectedVersions = new ArrayList<>();
+
+    for (int step = 0; step < 1000; step++) {
+      int key = random.nextInt(100);
+      if (random.nextBoolean()) {
+        map = map.put(key, "v" + step);
+        expected.put(key, "v" + step);
+      } else {
+        map = map.remove(key);
+        expected.remove(key);
+      }
+      if (step % 100 == 0) {
+        versions.add(map);
+        expectedVersions.add(new TreeMap<>(expected));
+      }
+    }
+
+    for (int i = 0; i < versions.size(); i++) {
+      check(versions.get(i), expectedVersions.get(i), random);
+    }
+  }
+
+  @Test
+  void fromSortedBuildsTheSameMap() {
+    List<Integer> keys = new ArrayList<>();
+    List<String> values = new ArrayList<>();
+    TreeMap<Integer, String> expected = new TreeMap<>();
+    for (int i = 0; i < 1000; i += 3) {
+      keys.add(i);
+      values.add("v" + i);
+      expected.put(i, "v" + i);
+    }
+
+    PersistentSortedMap<Integer, String> map = PersistentSortedMap.fromSorted(keys, values);
+    check(map, expected, new Random(3));
+
+    map = map.put(1, "one").remove(0);
+    expected.put(1, "one");
+    expected.remove(0);
+    check(map, expected, new Random(3));
+  }
+
+  @Test
+  void unchangedMapIsReturnedAsIs() {
+    PersistentSortedMap<Integer, String> map = PersistentSortedMap.<Integer, String>empty().put(1, "a");
+    assertSame(map, map.remove(2));
+    assertTrue(PersistentSortedMap.<Integer, String>empty().isEmpty());
+    assertThrows(IllegalArgumentException.class,
+        () -> PersistentSortedMap.fromSorted(List.of(1, 2), List.of("a")));
+  }
+
+  @Test
+  void iteratorsStopAtTheEnd() {
+    PersistentSortedMap<Integer, String> map = PersistentSortedMap.<Integer, String>empty().put(1, "a");
+    Iterator<Map.Entry<Integer, String>> entries = map.entriesAfter(1);
+    assertFalse(entries.hasNext());
+    assertThrows(NoSuchElementException.class, entries::next);
+    assertThrows(IndexOutOfBoundsException.class, () -> map.values().get(1));
+  }
+
+  private static void check(PersistentSortedMap<Integer, String> map, TreeMap<Integer, String> expected, Random random) {
+    assertEquals(expected.size(), map.size());
+    assertEquals(expected.isEmpty(), map.isEmpty());
+    assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(map.values()));
+
+    List<String> values = map.values();
+    for (int i = 0; i < Math.min(20, expected.size()); i++) {
+      int index = random.nextInt(expected.size());
+      assertEquals(new ArrayList<>(expected.values()).get(index), values.get(index));
+    }
+
+    for (int i = 0; i < 20; i++) {
+      int key = random.nextInt(520) - 10;
+      assertEquals(expected.get(key), map.get(key));
+
+      List<Map.Entry<Integer, String>> after = new ArrayList<>();
+      map.entriesAfter(key).forEachRemaining(after::add);
+      assertEquals(new ArrayList<>(expected.tailMap(key, false).entrySet()), after);
+    }
+
+    List<Map.Entry<Integer, String>> all = new ArrayList<>();
+    map.entriesAfter(null).forEachRemaining(all::add);
+    assertEquals(new ArrayList<>(expected.entrySet()), all);
+  }
+}
@@ -0,0 +1,92 @@
+package bob.cloverville;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Random inserts, point changes, removals and rebuilds, checked after each
+// step against a plain sorted list of the same members.
+class PointsLeaderboardTest {
+
+  private static final Comparator<Member> ORDER =
+      Comparator.comparingInt(Member::getPersonalPoints).reversed().thenComparing(Member::getId);
+
+  @Test
+  void matchesSortedListAfterRandomChanges() {
+    Random random = new Random(42);
+    PointsLeaderboard board = new PointsLeaderboard();
+    List<Member> filed = new ArrayList<>();
+
+    for (int step = 0; step < 3000; step++) {
+      int op = random.nextInt(20);
+      if (op < 8 || filed.isEmpty()) {
+        Member m = new Member("Member " + step, random.nextInt(50), 0);
+        board.update(m);
+        filed.add(m);
+      } else if (op < 15) {
+        Member m = filed.get(random.nextInt(filed.size()));
+        m.setPoints(random.nextInt(50));
+        board.update(m);
+      } else if (op < 19) {
+        Member m = filed.remove(random.nextInt(filed.size()));
+        board.remove(m.getId());
+      } else {
+        board.rebuild(filed);
+      }
+      check(board, filed, random);
+    }
+  }
+
+  @Test
+  void updateWithUnchangedPointsKeepsOneEntry() {
+    PointsLeaderboard board = new PointsLeaderboard();
+    Member m = new Member("Alice", 10, 0);
+    board.update(m);
+    board.update(m);
+
+    assertEquals(1, board.size());
+    assertEquals(List.of(m), board.top(5));
+  }
+
+  @Test
+  void unknownMemberHasNoRank() {
+    PointsLeaderboard board = new PointsLeaderboard();
+    board.update(new Member("Alice", 10, 0));
+
+    assertEquals(0, board.rank(UUID.randomUUID()));
+    board.remove(UUID.randomUUID());  // ignored
+    assertEquals(1, board.size());
+  }
+
+  @Test
+  void rejectsBadArguments() {
+    PointsLeaderboard board = new PointsLeaderboard();
+    assertThrows(IllegalArgumentException.class, () -> board.top(-1));
+    assertThrows(IllegalArgumentException.class, () -> board.withPointsBetween(5, 4));
+  }
+
+  private static void check(PointsLeaderboard board, List<Member> filed, Random random) {
+    List<Member> expected = new ArrayList<>(filed);
+    expected.sort(ORDER);
+
+    assertEquals(expected.size(), board.size());
+    assertEquals(expected, board.top(expected.size() + 1));
+
+    int n = random.nextInt(10);
+    assertEquals(expected.subList(0, Math.min(n, expected.size())), board.top(n));
+
+    for (int i = 0; i < Math.min(5, expected.size()); i++) {
+      int index = random.nextInt(expected.size());
+      assertEquals(index + 1, board.rank(expected.get(index).getId()));
+    }
+
+    int min = random.nextInt(50);
+    int max = min + random.nextInt(20);
+    List<Member> inRange = expected.stream()
+        .filter(m -> m.getPersonalPoints() >= min && m.getPersonalPoints() <= max)
+        .toList();
+    assertEquals(inRange, board.withPointsBetween(min, max));
+  }
+}
@@ -0,0 +1,114 @@
+package bob.cloverville;
+
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Writes into a directory that is a plain file until unblock() swaps in a
+// real one, so the first flush fails and a later one has to write the
+// batch that was put back.
+class WriteBehindStorageTest {
+
+  private static final Type STRING_LIST_TYPE = new TypeToken<List<String>>() {}.getType();
+  private static final Type MEMBER_MAP_TYPE = new TypeToken<Map<UUID, Member>>() {}.getType();
+
+  // Background retries may run too; they write the same state.
+  private final WriteBehindQueue queue = new WriteBehindQueue(200);
+
+  @TempDir
+  Path dir;
+
+  @AfterEach
+  void stopWriter() {
+    queue.shutdown();
+  }
+
+  @Test
+  void failedSnapshotIsRequeued() throws IOException {
+    Path file = blocked("list.json");
+    JsonStorage<String> storage = queue.wrap(new JsonStorage<>(file.toString(), STRING_LIST_TYPE), s -> s);
+
+    storage.save(List.of("a", "b"));
+    assertThrows(UncheckedIOException.class, queue::flushAll);
+
+    unblock(file);
+    queue.flushAll();
+    assertEquals(List.of("a", "b"), new JsonStorage<String>(file.toString(), STRING_LIST_TYPE).load());
+  }
+
+  @Test
+  void newerSnapshotReplacesTheFailedOne() throws IOException {
+    Path file = blocked("list.json");
+    JsonStorage<String> storage = queue.wrap(new JsonStorage<>(file.toString(), STRING_LIST_TYPE), s -> s);
+
+    storage.save(List.of("old"));
+    assertThrows(UncheckedIOException.class, queue::flushAll);
+    storage.save(List.of("new"));
+
+    unblock(file);
+    queue.flushAll();
+    assertEquals(List.of("new"), new JsonStorage<String>(file.toString(), STRING_LIST_TYPE).load());
+  }
+
+  @Test
+  void failedJournalChangesAreRequeued() throws IOException {
+    Path file = blocked("members.json");
+    JsonStorage<Member> storage = queue.wrap(journal(file), Member::copy);
+
+    Member alice = new Member("Alice", 5, 0);
+    Member bob = new Member("Bob", 7, 0);
+    storage.saveChange(List.of(alice), alice);
+    storage.saveChange(List.of(alice, bob), bob);
+    assertThrows(UncheckedIOException.class, queue::flushAll);
+
+    storage.saveRemoval(List.of(bob), alice);
+    unblock(file);
+    queue.flushAll();
+
+    List<Member> stored = journal(file).load();
+    assertEquals(List.of(bob.getId()), stored.stream().map(Member::getId).toList());
+    assertEquals(7, stored.get(0).getPersonalPoints());
+  }
+
+  @Test
+  void failedSingleValueIsRequeued() throws IOException {
+    Path file = blocked("value.json");
+    JsonStorage<String> storage = queue.wrap(new JsonStorage<>(file.toString(), String.class), s -> s);
+
+    storage.saveSingle("kept");
+    assertThrows(UncheckedIOException.class, queue::flushAll);
+
+    unblock(file);
+    queue.flushAll();
+    assertEquals("kept", new JsonStorage<String>(file.toString(), String.class).loadSingle());
+  }
+
+  private static JournalStorage<Member> journal(Path file) {
+    return new JournalStorage<>(JsonStorage.keyed(file.toString(), MEMBER_MAP_TYPE, Member::getId),
+        Member.class, Member::getId);
+  }
+
+  // A path whose parent is a file, so nothing can be written there.
+  private Path blocked(String name) throws IOException {
+    Path parent = dir.resolve("store");
+    Files.writeString(parent, "not a directory");
+    return parent.resolve(name);
+  }
+
+  private static void unblock(Path file) throws IOException {
+    Files.delete(file.getParent());
+    Files.createDirectory(file.getParent());
+  }
+}
@@ -42,6 +42,39 @@ document.addEventListener("DOMContentLoaded", function () {
         // Log any errors (like file not found) to the console
         console.error("Error:", error);
       });
+
+    // Get this week's numbers from the stats file
+    fetch("json/stats.json")
+      .then(function (response) {
+        return response.json();
+      })
+      .then(function (stats) {
+        // Weeks start on Monday; work out this week's Monday as "YYYY-MM-DD"
+        const monday = new Date();
+        monday.setDate(monday.getDate() - ((monday.getDay() + 6) % 7));
+        const start =
+          monday.getFullYear() +
+          "-" +
+          String(monday.getMonth() + 1).padStart(2, "0") +
+          "-" +
+          String(monday.getDate()).padStart(2, "0");
+
+        // Weeks with nothing logged are left out of the file
+        let greens = 0;
+        let points = 0;
+        for (let i = 0; i < stats.weeks.length; i++) {
+          if (stats.weeks[i].start === start) {
+            greens = stats.weeks[i].greensLogged;
+            points = stats.weeks[i].communityPoints;
+          }
+        }
+
+        document.getElementById("week-greens").innerHTML = greens;
+        document.getElementById("week-points").innerHTML = points;
+      })
+      .catch(function (error) {
+        console.error("Error:", error);
+      });
   }
 
   // --- Green Actions Page ---